@@ -0,0 +1,161 @@
+import java.util.*;
+
+public class Alphabet {
+    /*
+     * A partition of all chars into equivalence classes
+     * Two chars are in the same class if no transition of the automaton
+     * can tell them apart, so table driven engines need one column per
+     * class instead of one per char. Class 0 holds the chars that no
+     * transition accepts, and a pattern over a handful of symbols has
+     * only a handful of classes.
+     *
+     * The map from chars to classes is a two level table.
+     * The high byte of a char selects a page of 256 entries,
+     * and identical pages are stored once.
+     */
+    private static final int CHARS = Character.MAX_VALUE + 1;
+    private static final int PAGE_SIZE = 256;
+
+    private final int classCount;
+    private final int[] pages; // The offset of the page of each high byte in classes
+    private final char[] classes; // The class of every char, grouped into unique pages
+    private final char[][] intervals; // The chars of each class as lo, hi pairs
+
+    /*
+     * Each transition is given as the sorted disjoint intervals
+     * of the chars it accepts, as lo, hi pairs
+     */
+    public Alphabet(List<char[]> transitions) {
+        // Chars that no transition set starts or ends between are equivalent
+        TreeSet<Integer> boundaries = new TreeSet<>();
+        boundaries.add(0);
+        boundaries.add(CHARS);
+        Set<List<Character>> distinct = new LinkedHashSet<>();
+        for (char[] ranges : transitions) {
+            List<Character> key = new ArrayList<>();
+            for (int i = 0; i < ranges.length; i += 2) {
+                boundaries.add((int) ranges[i]);
+                boundaries.add(ranges[i + 1] + 1);
+                key.add(ranges[i]);
+                key.add(ranges[i + 1]);
+            }
+            distinct.add(key);
+        }
+
+        // The elementary interval i is starts[i] ... starts[i + 1] - 1
+        int[] starts = new int[boundaries.size()];
+        int count = 0;
+        for (int boundary : boundaries) {
+            starts[count++] = boundary;
+        }
+        final int elementary = starts.length - 1;
+
+        // The signature of an elementary interval is the set of transitions that accept it
+        BitSet[] signatures = new BitSet[elementary];
+        for (int i = 0; i < elementary; i++) {
+            signatures[i] = new BitSet();
+        }
+        int index = 0;
+        for (List<Character> ranges : distinct) {
+            for (int i = 0; i < ranges.size(); i += 2) {
+                int first = Arrays.binarySearch(starts, ranges.get(i));
+                while (starts[first] <= ranges.get(i + 1)) {
+                    signatures[first].set(index);
+                    first++;
+                }
+            }
+            index++;
+        }
+
+        // Intervals with equal signatures form a class, the empty signature is class 0
+        Map<BitSet, Integer> ids = new HashMap<>();
+        ids.put(new BitSet(), 0);
+        List<List<Character>> members = new ArrayList<>();
+        members.add(new ArrayList<>());
+        int[] classOf = new int[elementary];
+        for (int i = 0; i < elementary; i++) {
+            Integer id = ids.get(signatures[i]);
+            if (id == null) {
+                id = members.size();
+                ids.put(signatures[i], id);
+                members.add(new ArrayList<>());
+            }
+
+            classOf[i] = id;
+            members.get(id).add((char) starts[i]);
+            members.get(id).add((char) (starts[i + 1] - 1));
+        }
+
+        classCount = members.size();
+        intervals = new char[classCount][];
+        for (int id = 0; id < classCount; id++) {
+            List<Character> ranges = members.get(id);
+            intervals[id] = new char[ranges.size()];
+            for (int i = 0; i < ranges.size(); i++) {
+                intervals[id][i] = ranges.get(i);
+            }
+        }
+
+        // Fill the pages from the elementary intervals and store every distinct page once
+        pages = new int[CHARS / PAGE_SIZE];
+        Map<String, Integer> offsets = new HashMap<>();
+        StringBuilder unique = new StringBuilder();
+        char[] page = new char[PAGE_SIZE];
+        int interval = 0;
+        for (int p = 0; p < pages.length; p++) {
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                while (starts[interval + 1] <= p * PAGE_SIZE + i) {
+                    interval++;
+                }
+                page[i] = (char) classOf[interval];
+            }
+
+            String key = new String(page);
+            Integer offset = offsets.get(key);
+            if (offset == null) {
+                offset = unique.length();
+                offsets.put(key, offset);
+                unique.append(page);
+            }
+            pages[p] = offset;
+        }
+        classes = unique.toString().toCharArray();
+    }
+
+    // An alphabet from its tables, as AutomatonFile loads it
+    Alphabet(int[] pages, char[] classes, char[][] intervals) {
+        classCount = intervals.length;
+        this.pages = pages;
+        this.classes = classes;
+        this.intervals = intervals;
+    }
+
+    public int classCount() {
+        return classCount;
+    }
+
+    // The class of the char
+    public int classOf(char c) {
+        return classes[pages[c >>> 8] + (c & 0xff)];
+    }
+
+    // A char of the class, every char of a class behaves the same
+    public char representative(int id) {
+        return intervals[id].length == 0 ? 0 : intervals[id][0];
+    }
+
+    // The chars of the class as sorted lo, hi pairs
+    public char[] intervals(int id) {
+        return intervals[id].clone();
+    }
+
+    // The offset of the page of each high byte, for code generators
+    int[] pages() {
+        return pages.clone();
+    }
+
+    // The classes of the unique pages, for code generators
+    char[] classes() {
+        return classes.clone();
+    }
+}
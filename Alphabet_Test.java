@@ -0,0 +1,38 @@
+import java.util.*;
+import org.junit.*;
+
+public class Alphabet_Test {
+    @Test
+    public void symbolsOfThePattern() {
+        Alphabet alphabet = NFA.buildAutomaton(RegexParser.parse("(ab|a)(bc|c)*")).getProgram().alphabet;
+        Assert.assertEquals(4, alphabet.classCount());
+        Assert.assertEquals(0, alphabet.classOf('d'));
+        Assert.assertEquals(0, alphabet.classOf('€'));
+        Assert.assertNotEquals(alphabet.classOf('a'), alphabet.classOf('b'));
+        Assert.assertNotEquals(alphabet.classOf('b'), alphabet.classOf('c'));
+        Assert.assertEquals('b', alphabet.representative(alphabet.classOf('b')));
+    }
+
+    @Test
+    public void overlappingRanges() {
+        // a-z and m-p overlap, so m-p is a class of its own and a-l, q-z share one
+        Alphabet alphabet = new Alphabet(Arrays.asList(new char[] { 'a', 'z' }, new char[] { 'm', 'p' },
+                new char[] { 'a', 'z' }));
+        Assert.assertEquals(3, alphabet.classCount());
+        Assert.assertEquals(alphabet.classOf('a'), alphabet.classOf('z'));
+        Assert.assertEquals(alphabet.classOf('m'), alphabet.classOf('p'));
+        Assert.assertNotEquals(alphabet.classOf('a'), alphabet.classOf('m'));
+        Assert.assertArrayEquals(new char[] { 'a', 'l', 'q', 'z' }, alphabet.intervals(alphabet.classOf('c')));
+        Assert.assertEquals(0, alphabet.classOf('`'));
+        Assert.assertEquals(0, alphabet.classOf('{'));
+    }
+
+    @Test
+    public void identicalPagesAreShared() {
+        Alphabet alphabet = new Alphabet(Arrays.asList(new char[] { 'a', 'a' }, new char[] { '一', '鿿' }));
+        Assert.assertEquals(3, alphabet.classCount());
+        Assert.assertEquals(alphabet.classOf('一'), alphabet.classOf('瀀'));
+        // The page with 'a', the pages outside the range and the pages inside it
+        Assert.assertEquals(3 * 256, alphabet.classes().length);
+    }
+}
@@ -0,0 +1,305 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+public final class AutomatonFile {
+    /*
+     * A compact binary file for a compiled program or a pattern set
+     * Loading it skips the parser, the NFA and the alphabet, which is where
+     * compiling a large pattern set spends its time. The counters of
+     * a program are written unrolled, see CompiledNFA.withoutCounters().
+     *
+     * The file is a header and a sequence of sections, all little endian:
+     *   magic "ENFA", format version, kind (program or pattern set)
+     *   the program: start, pattern count, then the arrays acceptId, rangeStart,
+     *   ranges, next, closureStart and closureStates
+     *   the alphabet: the pages, the classes and the intervals of every class
+     *   for a pattern set: the offsets of the patterns and their chars
+     * Every array is its length followed by its values, and arrays of chars
+     * are padded to a multiple of 4 bytes, so every int stays aligned.
+     *
+     * Loading maps the file and copies each array out of the mapping in bulk,
+     * which is a memory copy without any parsing or per-state objects.
+     * The engines index plain arrays in their inner loops, so the arrays are
+     * copied instead of read through the mapping on every step, and a loaded
+     * program takes as much heap as a compiled one. Only the patterns of
+     * a set stay in the mapping, and are decoded when regEx() asks for one.
+     *
+     * A file of another version or kind is refused, and so is a file whose
+     * arrays are out of bounds or whose ranges are not sorted pairs,
+     * with an IOException before any engine can index them.
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x41464e45; // "ENFA" in little endian
+    private static final int PROGRAM = 1;
+    private static final int PATTERN_SET = 2;
+    private static final int PAGE_COUNT = 256;
+    private static final int PAGE_SIZE = 256;
+
+    private AutomatonFile() {
+    }
+
+    public static void write(CompiledNFA program, Path file) throws IOException {
+        write(file, PROGRAM, program, null);
+    }
+
+    public static void write(PatternSet set, Path file) throws IOException {
+        List<String> regExes = new ArrayList<>();
+        for (int i = 0; i < set.size(); i++) {
+            regExes.add(set.regEx(i));
+        }
+        write(file, PATTERN_SET, set.program(), regExes);
+    }
+
+    public static CompiledNFA loadProgram(Path file) throws IOException {
+        ByteBuffer buffer = map(file);
+        readHeader(buffer, PROGRAM, file);
+        return readProgram(buffer, file);
+    }
+
+    public static PatternSet loadPatternSet(Path file) throws IOException {
+        ByteBuffer buffer = map(file);
+        readHeader(buffer, PATTERN_SET, file);
+        final CompiledNFA program = readProgram(buffer, file);
+
+        final int[] offsets = readInts(buffer, file);
+        final int length = readLength(buffer, Character.BYTES, file);
+        check(offsets.length == program.patternCount + 1 && offsets[0] == 0
+                && offsets[offsets.length - 1] == length && ascending(offsets), "pattern offsets", file);
+        CharBuffer chars = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asCharBuffer();
+        chars.limit(length);
+        return new PatternSet(new MappedStrings(chars.asReadOnlyBuffer(), offsets), program);
+    }
+
+    private static void write(Path file, int kind, CompiledNFA counted, List<String> regExes) throws IOException {
+        final CompiledNFA program = counted.withoutCounters();
+        Alphabet alphabet = program.alphabet;
+        List<char[]> intervals = new ArrayList<>();
+        for (int id = 0; id < alphabet.classCount(); id++) {
+            intervals.add(alphabet.intervals(id));
+        }
+        int[] intervalStart = new int[intervals.size() + 1];
+        StringBuilder intervalChars = new StringBuilder();
+        for (int id = 0; id < intervals.size(); id++) {
+            intervalChars.append(intervals.get(id));
+            intervalStart[id + 1] = intervalChars.length();
+        }
+
+        int[] offsets = null;
+        StringBuilder patterns = new StringBuilder();
+        if (regExes != null) {
+            offsets = new int[regExes.size() + 1];
+            for (int i = 0; i < regExes.size(); i++) {
+                patterns.append(regExes.get(i));
+                offsets[i + 1] = patterns.length();
+            }
+        }
+
+        final char[] classes = alphabet.classes();
+        final long size = 5L * Integer.BYTES + ints(program.acceptId) + ints(program.rangeStart)
+                + chars(program.ranges.length) + ints(program.next) + ints(program.closureStart)
+                + ints(program.closureStates) + ints(alphabet.pages()) + chars(classes.length) + ints(intervalStart)
+                + chars(intervalChars.length()) + (offsets == null ? 0 : ints(offsets) + chars(patterns.length()));
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Automaton too large for one file: " + size + " bytes");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(kind);
+        buffer.putInt(program.start).putInt(program.patternCount);
+        putInts(buffer, program.acceptId);
+        putInts(buffer, program.rangeStart);
+        putChars(buffer, CharBuffer.wrap(program.ranges));
+        putInts(buffer, program.next);
+        putInts(buffer, program.closureStart);
+        putInts(buffer, program.closureStates);
+        putInts(buffer, alphabet.pages());
+        putChars(buffer, CharBuffer.wrap(classes));
+        putInts(buffer, intervalStart);
+        putChars(buffer, intervalChars);
+        if (offsets != null) {
+            putInts(buffer, offsets);
+            putChars(buffer, patterns);
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    // The bytes of an int array and of a char array with its padding
+    private static long ints(int[] values) {
+        return Integer.BYTES * (1L + values.length);
+    }
+
+    private static long chars(int length) {
+        return Integer.BYTES + (Character.BYTES * (long) length + 3) / 4 * 4;
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        buffer.putInt(values.length);
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + Integer.BYTES * values.length);
+    }
+
+    private static void putChars(ByteBuffer buffer, CharSequence values) {
+        buffer.putInt(values.length());
+        buffer.asCharBuffer().put(CharBuffer.wrap(values));
+        buffer.position(buffer.position() + (int) chars(values.length()) - Integer.BYTES);
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not an automaton file: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private static void readHeader(ByteBuffer buffer, int kind, Path file) throws IOException {
+        if (buffer.remaining() < 3 * Integer.BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException("Not an automaton file: " + file);
+        }
+        final int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported automaton file version " + version + ", expected " + VERSION + ": " + file);
+        }
+        final int actual = buffer.getInt();
+        if (actual != kind) {
+            throw new IOException((kind == PROGRAM ? "Not a program" : "Not a pattern set") + ": " + file);
+        }
+    }
+
+    private static CompiledNFA readProgram(ByteBuffer buffer, Path file) throws IOException {
+        check(buffer.remaining() >= 2 * Integer.BYTES, "header", file);
+        final int start = buffer.getInt();
+        final int patternCount = buffer.getInt();
+        final int[] acceptId = readInts(buffer, file);
+        final int[] rangeStart = readInts(buffer, file);
+        final char[] ranges = readChars(buffer, file);
+        final int[] next = readInts(buffer, file);
+        final int[] closureStart = readInts(buffer, file);
+        final int[] closureStates = readInts(buffer, file);
+
+        final int n = next.length;
+        check(n > 0 && start >= 0 && start < n && patternCount >= 0, "start state", file);
+        check(acceptId.length == n && within(acceptId, CompiledNFA.NONE, patternCount), "accept states", file);
+        check(rangeStart.length == n + 1 && rangeStart[0] == 0 && ascending(rangeStart)
+                && 2L * rangeStart[n] == ranges.length, "ranges", file);
+        for (int s = 0; s < n; s++) {
+            check(sortedPairs(ranges, 2 * rangeStart[s], 2 * rangeStart[s + 1]), "ranges", file);
+        }
+        check(within(next, CompiledNFA.NONE, n), "transitions", file);
+        check(closureStart.length == n + 1 && closureStart[0] == 0 && ascending(closureStart)
+                && closureStart[n] == closureStates.length && within(closureStates, 0, n), "closures", file);
+
+        final int[] pages = readInts(buffer, file);
+        final char[] classes = readChars(buffer, file);
+        final int[] intervalStart = readInts(buffer, file);
+        final char[] intervalChars = readChars(buffer, file);
+        check(intervalStart.length > 1 && intervalStart[0] == 0 && ascending(intervalStart)
+                && intervalStart[intervalStart.length - 1] == intervalChars.length, "alphabet", file);
+        char[][] intervals = new char[intervalStart.length - 1][];
+        for (int id = 0; id < intervals.length; id++) {
+            check((intervalStart[id + 1] - intervalStart[id]) % 2 == 0
+                    && sortedPairs(intervalChars, intervalStart[id], intervalStart[id + 1]), "alphabet intervals", file);
+            intervals[id] = Arrays.copyOfRange(intervalChars, intervalStart[id], intervalStart[id + 1]);
+        }
+        check(pages.length == PAGE_COUNT && within(pages, 0, classes.length - PAGE_SIZE + 1), "alphabet pages", file);
+        for (char id : classes) {
+            check(id < intervals.length, "alphabet classes", file);
+        }
+
+        return new CompiledNFA(start, acceptId, patternCount, rangeStart, ranges, next, closureStart, closureStates,
+                new Alphabet(pages, classes, intervals));
+    }
+
+    private static int readLength(ByteBuffer buffer, int bytes, Path file) throws IOException {
+        check(buffer.remaining() >= Integer.BYTES, "length", file);
+        final int length = buffer.getInt();
+        check(length >= 0 && (long) length * bytes <= buffer.remaining(), "length", file);
+        return length;
+    }
+
+    private static int[] readInts(ByteBuffer buffer, Path file) throws IOException {
+        int[] values = new int[readLength(buffer, Integer.BYTES, file)];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + Integer.BYTES * values.length);
+        return values;
+    }
+
+    private static char[] readChars(ByteBuffer buffer, Path file) throws IOException {
+        char[] values = new char[readLength(buffer, Character.BYTES, file)];
+        buffer.asCharBuffer().get(values);
+        buffer.position(Math.min(buffer.limit(), buffer.position() + (int) chars(values.length) - Integer.BYTES));
+        return values;
+    }
+
+    private static void check(boolean valid, String section, Path file) throws IOException {
+        if (!valid) {
+            throw new IOException("Corrupt " + section + " in automaton file: " + file);
+        }
+    }
+
+    // Check if every value is in lo ... hi - 1
+    private static boolean within(int[] values, int lo, int hi) {
+        for (int value : values) {
+            if (value < lo || value >= hi) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Check if chars[from] ... chars[to - 1] are lo, hi pairs in ascending order that do not overlap
+    private static boolean sortedPairs(char[] chars, int from, int to) {
+        for (int i = from; i < to; i += 2) {
+            if (chars[i] > chars[i + 1] || (i > from && chars[i] <= chars[i - 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean ascending(int[] values) {
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] < values[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The patterns of a loaded set, decoded from the mapped chars on demand
+    private static final class MappedStrings extends AbstractList<String> {
+        private final CharBuffer chars;
+        private final int[] offsets;
+
+        MappedStrings(CharBuffer chars, int[] offsets) {
+            this.chars = chars;
+            this.offsets = offsets;
+        }
+
+        @Override
+        public String get(int index) {
+            // Absolute reads, so threads can share the buffer
+            char[] value = new char[offsets[index + 1] - offsets[index]];
+            chars.get(offsets[index], value);
+            return new String(value);
+        }
+
+        @Override
+        public int size() {
+            return offsets.length - 1;
+        }
+    }
+}
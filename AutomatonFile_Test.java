@@ -0,0 +1,143 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.*;
+
+public class AutomatonFile_Test {
+    private Path file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("AutomatonFile_Test", ".nfa");
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static String randomInput(Random random) {
+        StringBuilder input = new StringBuilder();
+        final int length = random.nextInt(9);
+        for (int i = 0; i < length; i++) {
+            input.append("abcxy1é€".charAt(random.nextInt(8)));
+        }
+        return input.toString();
+    }
+
+    @Test
+    public void programRoundTrip() throws IOException {
+        String[] patterns = { "", "abc", "(a+|b)(a*|c)", "(ab|a)(bc|c)*", "x(a|b){2,4}y", "[a-c]+\\d{0,2}", "(a|é)*€" };
+        Random random = new Random(42);
+        for (String regEx : patterns) {
+            for (CompiledNFA program : Arrays.asList(Pattern.compile(regEx).program(), GlushkovBuilder.build(regEx))) {
+                AutomatonFile.write(program, file);
+                CompiledNFA loaded = AutomatonFile.loadProgram(file);
+                // Counters are written unrolled
+                Assert.assertEquals(program.withoutCounters().stateCount(), loaded.stateCount());
+                Assert.assertEquals(program.alphabet.classCount(), loaded.alphabet.classCount());
+
+                Matcher expected = new Matcher(program);
+                Matcher actual = new Matcher(loaded);
+                for (int i = 0; i < 200; i++) {
+                    final String input = randomInput(random);
+                    Assert.assertEquals(regEx + " on " + input, expected.matches(input), actual.matches(input));
+                    Assert.assertEquals(regEx + " in " + input, new Searcher(program).find(input, 0),
+                            new Searcher(loaded).find(input, 0));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void patternSetRoundTrip() throws IOException {
+        PatternSet set = PatternSet.compile("a+", "ab*c", "(a|b)*", "€x");
+        AutomatonFile.write(set, file);
+        PatternSet loaded = AutomatonFile.loadPatternSet(file);
+
+        Assert.assertEquals(4, loaded.size());
+        Assert.assertEquals("ab*c", loaded.regEx(1));
+        Assert.assertEquals("€x", loaded.regEx(3));
+        Random random = new Random(42);
+        for (int i = 0; i < 300; i++) {
+            final String input = randomInput(random);
+            Assert.assertEquals(input, set.matches(input), loaded.matches(input));
+        }
+    }
+
+    @Test
+    public void refusesOtherFiles() throws IOException {
+        AutomatonFile.write(Pattern.compile("ab*").program(), file);
+        byte[] bytes = Files.readAllBytes(file);
+
+        // A program is not a pattern set
+        try {
+            AutomatonFile.loadPatternSet(file);
+            Assert.fail("Loaded a program as a pattern set");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("Not a pattern set"));
+        }
+
+        // Another version
+        byte[] version = bytes.clone();
+        version[4] = 2;
+        assertRefused(version, "version 2");
+
+        // Not an automaton file at all
+        assertRefused("not an automaton".getBytes(), "Not an automaton file");
+
+        // A transition that points past the last state
+        final int stateCount = Pattern.compile("ab*").program().stateCount();
+        assertRefused(corrupt(bytes, NEXT, 0, stateCount), "Corrupt transitions");
+
+        // A closure with a state past the last one
+        assertRefused(corrupt(bytes, CLOSURE_STATES, 0, stateCount), "Corrupt closures");
+
+        // A range whose lo is above its hi
+        assertRefused(corrupt(bytes, RANGES, 0, 0xffff), "Corrupt ranges");
+
+        // A class of the alphabet with an odd number of interval chars
+        assertRefused(corrupt(bytes, INTERVAL_START, 1, 1), "Corrupt alphabet intervals");
+
+        // Cut off in the middle
+        assertRefused(Arrays.copyOf(version, bytes.length / 2), "version 2");
+        assertRefused(Arrays.copyOf(bytes, 40), "Corrupt");
+    }
+
+    // The sections of a program file, in their order after the header
+    private static final int RANGES = 2;
+    private static final int NEXT = 3;
+    private static final int CLOSURE_STATES = 5;
+    private static final int INTERVAL_START = 8;
+    private static final boolean[] CHAR_SECTIONS = { false, false, true, false, false, false, false, true, false, true };
+
+    // A copy of the file with a value of a section replaced, a char in char sections and an int otherwise
+    private static byte[] corrupt(byte[] bytes, int section, int index, int value) {
+        byte[] copy = bytes.clone();
+        ByteBuffer buffer = ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN);
+        int offset = 5 * Integer.BYTES;
+        for (int i = 0; i < section; i++) {
+            final int length = buffer.getInt(offset);
+            offset += Integer.BYTES + (CHAR_SECTIONS[i] ? (Character.BYTES * length + 3) / 4 * 4 : Integer.BYTES * length);
+        }
+
+        offset += Integer.BYTES;
+        if (CHAR_SECTIONS[section]) {
+            buffer.putChar(offset + Character.BYTES * index, (char) value);
+        } else {
+            buffer.putInt(offset + Integer.BYTES * index, value);
+        }
+        return copy;
+    }
+
+    private void assertRefused(byte[] bytes, String message) throws IOException {
+        Files.write(file, bytes);
+        try {
+            AutomatonFile.loadProgram(file);
+            Assert.fail("Loaded " + message);
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+public final class BitParallelNFA {
+    /*
+     * A program of at most 64 states, simulated with the states as the bits of a long
+     * Bit s of the current set is on if state s is waiting for its symbol.
+     * Matching a char is a table lookup for the states whose symbol
+     * transition accepts the class of the char, an AND with the current
+     * states, and the union of the closures that the taken transitions lead to.
+     *
+     * The union of the closures is looked up byte by byte: the table of
+     * chunk k holds the union for every value of bits 8k to 8k + 7,
+     * so a step costs one shift, lookup and OR per chunk of 8 states.
+     * The tables of a program take at most 16 KiB, far less than a DFA
+     * with a row per subset of states.
+     *
+     * Programs from GlushkovBuilder have no epsilon states, one state per
+     * position of the pattern plus a start and an accept state, so patterns
+     * with up to 62 chars and classes fit. The matcher keeps its state in a
+     * local long, so one instance can be shared between threads.
+     */
+    public static final int MAX_STATES = Long.SIZE;
+
+    private static final int CHUNK = 8;
+    private static final int CHUNK_SIZE = 1 << CHUNK;
+
+    private final Alphabet alphabet;
+    private final long[] accepts; // The states whose transition accepts each class of the alphabet
+    private final long[] follow; // The union of the closures of each chunk value, at chunk * 256 + value
+    private final long start;
+    private final long accept;
+
+    private BitParallelNFA(CompiledNFA program) {
+        final int n = program.stateCount();
+        alphabet = program.alphabet;
+        final int chunks = (n + CHUNK - 1) / CHUNK;
+        start = closure(program, program.start);
+        accept = program.accept == CompiledNFA.NONE ? 0 : 1L << program.accept;
+
+        accepts = new long[alphabet.classCount()];
+        for (int id = 1; id < accepts.length; id++) {
+            final char c = alphabet.representative(id);
+            for (int s = 0; s < n; s++) {
+                if (program.hasTransition(s, c)) {
+                    accepts[id] |= 1L << s;
+                }
+            }
+        }
+
+        // A table entry is the entry without its highest bit, and the closure of that state
+        follow = new long[chunks * CHUNK_SIZE];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            for (int value = 1; value < CHUNK_SIZE; value++) {
+                final int high = 31 - Integer.numberOfLeadingZeros(value);
+                final int state = chunk * CHUNK + high;
+                long target = 0;
+                if (state < n && program.next[state] != CompiledNFA.NONE) {
+                    target = closure(program, program.next[state]);
+                }
+                follow[chunk * CHUNK_SIZE + value] = follow[chunk * CHUNK_SIZE + (value ^ 1 << high)] | target;
+            }
+        }
+    }
+
+    // The bit-parallel form of a single pattern program, or null if it has too many states
+    public static BitParallelNFA of(CompiledNFA program) {
+        if (program.withoutCounters().stateCount() > MAX_STATES || program.patternCount != 1) {
+            return null;
+        }
+        return new BitParallelNFA(program.withoutCounters());
+    }
+
+    private static long closure(CompiledNFA program, int state) {
+        long set = 0;
+        for (int i = program.closureStart[state]; i < program.closureStart[state + 1]; i++) {
+            set |= 1L << program.closureStates[i];
+        }
+        return set;
+    }
+
+    // Check if the whole input matches the regular expression
+    public boolean matches(CharSequence input) {
+        long current = start;
+        for (int i = 0; i < input.length() && current != 0; i++) {
+            current = step(current & accepts[alphabet.classOf(input.charAt(i))]);
+        }
+
+        return (current & accept) != 0;
+    }
+
+    // The union of the closures that the taken transitions lead to
+    private long step(long taken) {
+        long next = 0;
+        for (int chunk = 0; taken != 0; chunk++) {
+            next |= follow[chunk * CHUNK_SIZE + (int) (taken & (CHUNK_SIZE - 1))];
+            taken >>>= CHUNK;
+        }
+        return next;
+    }
+}
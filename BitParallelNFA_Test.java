@@ -0,0 +1,42 @@
+import java.util.*;
+import org.junit.*;
+
+public class BitParallelNFA_Test {
+    private static final String[] PATTERNS = { "", "abc", "(a+|b)(a*|c)", "(ab|a)(bc|c)*", "(a*b*)*c",
+            "x(a|b){2,4}y", "[a-c]+\\d{0,2}", "(a|é)*€", "(a|b)*a(a|b){6}", };
+
+    @Test
+    public void sameResultsAsNFA() {
+        Random random = new Random(42);
+        for (String regEx : PATTERNS) {
+            NFA nfa = NFA.buildAutomaton(RegexParser.parse(regEx));
+            BitParallelNFA thompson = BitParallelNFA.of(nfa.getProgram());
+            BitParallelNFA glushkov = BitParallelNFA.of(GlushkovBuilder.build(regEx));
+            for (int i = 0; i < 500; i++) {
+                StringBuilder input = new StringBuilder();
+                final int length = random.nextInt(12);
+                for (int j = 0; j < length; j++) {
+                    input.append("abcxy1é€".charAt(random.nextInt(8)));
+                }
+
+                nfa.initialize();
+                final boolean expected = nfa.match(input.toString());
+                Assert.assertEquals(regEx + " on " + input, expected, thompson.matches(input));
+                Assert.assertEquals(regEx + " on " + input, expected, glushkov.matches(input));
+            }
+        }
+    }
+
+    @Test
+    public void largestPattern() {
+        // 62 positions, the start state and the accept state fill all 64 bits
+        final String regEx = "(ab)*" + "c".repeat(59) + "d";
+        BitParallelNFA bitParallel = BitParallelNFA.of(GlushkovBuilder.build(regEx));
+        Assert.assertNotNull(bitParallel);
+        Assert.assertTrue(bitParallel.matches("abab" + "c".repeat(59) + "d"));
+        Assert.assertFalse(bitParallel.matches("abab" + "c".repeat(58) + "d"));
+
+        Assert.assertNull(BitParallelNFA.of(GlushkovBuilder.build(regEx + "e")));
+        Assert.assertNull(BitParallelNFA.of(PatternSet.compile("a", "b").program()));
+    }
+}
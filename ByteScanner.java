@@ -0,0 +1,85 @@
+import java.nio.*;
+
+public final class ByteScanner {
+    /*
+     * Find a byte in a buffer eight bytes at a time
+     * A long read from the buffer holds eight bytes, and XOR with the byte
+     * repeated eight times turns every occurrence into a zero byte.
+     * The zero bytes are found with a few ALU operations on the whole word,
+     * and the highest bit of each zero byte is set in the result, without
+     * carries between the bytes, so the first occurrence is the first set bit
+     * in the byte order of the buffer. The bytes that do not fill a word
+     * are compared one by one.
+     *
+     * If the JVM runs with --add-modules jdk.incubator.vector, the scan
+     * goes through VectorByteScanner instead, a whole vector at a time.
+     */
+    private static final long LOW_BITS = 0x7f7f7f7f7f7f7f7fL;
+    private static final long ONES = 0x0101010101010101L;
+
+    // The vector scan, null if it is not available
+    // A constant, so the JIT compiler keeps only one of the two scans and inlines it
+    static final Scan VECTOR = vectorScan();
+
+    // A scan that ByteScanner may not be able to load, so it is only known by this interface
+    interface Scan {
+        // The first index in buffer[from] ... buffer[to - 1] that holds the value, -1 if there is none
+        int indexOf(ByteBuffer buffer, int from, int to, byte value);
+    }
+
+    private ByteScanner() {
+    }
+
+    // The first index in buffer[from] ... buffer[to - 1] that holds the value, -1 if there is none
+    public static int indexOf(ByteBuffer buffer, int from, int to, byte value) {
+        return VECTOR != null ? VECTOR.indexOf(buffer, from, to, value) : swarIndexOf(buffer, from, to, value);
+    }
+
+    /*
+     * VectorByteScanner if the vector module is resolved and the class links against it
+     * The class is loaded by name, so a plain javac of the other classes neither
+     * compiles it nor needs the module. The incubator API changes between
+     * releases, and a JDK after 17 lacks some of the methods it calls.
+     */
+    private static Scan vectorScan() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        // No vector has more than 256 bytes, so the vector loop runs
+        byte[] bytes = new byte[256];
+        bytes[255] = 1;
+        try {
+            Scan scan = (Scan) Class.forName("VectorByteScanner").getDeclaredConstructor().newInstance();
+            return scan.indexOf(ByteBuffer.wrap(bytes), 0, bytes.length, (byte) 1) == 255 ? scan : null;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    // indexOf() a word at a time
+    static int swarIndexOf(ByteBuffer buffer, int from, int to, byte value) {
+        final long pattern = (value & 0xffL) * ONES;
+        final boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            final long zeros = zeroBytes(buffer.getLong(i) ^ pattern);
+            if (zeros != 0) {
+                final int bit = bigEndian ? Long.numberOfLeadingZeros(zeros) : Long.numberOfTrailingZeros(zeros);
+                return i + bit / Byte.SIZE;
+            }
+        }
+
+        for (; i < to; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // The highest bit of every zero byte of the word
+    private static long zeroBytes(long word) {
+        final long nonZeroLow = (word & LOW_BITS) + LOW_BITS; // The highest bit is set if the low 7 bits are not zero
+        return ~(nonZeroLow | word | LOW_BITS);
+    }
+}
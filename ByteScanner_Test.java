@@ -0,0 +1,55 @@
+import java.nio.*;
+import java.util.*;
+import org.junit.*;
+
+public class ByteScanner_Test {
+    private static int naiveIndexOf(ByteBuffer buffer, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void sameAsByteByByte() {
+        Random random = new Random(42);
+        for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+            for (int n = 0; n < 2000; n++) {
+                // Short buffers for the words, long ones for vectors of up to 64 bytes
+                byte[] bytes = new byte[random.nextInt(n % 2 == 0 ? 40 : 300)];
+                for (int i = 0; i < bytes.length; i++) {
+                    // Few distinct values, with the bytes next to the value that borrows could confuse
+                    bytes[i] = (byte) new int[] { 0, 1, 0x0a, 0x0b, 0x80, 0x81, 0xff }[random.nextInt(7)];
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(bytes).order(order);
+                final int from = random.nextInt(bytes.length + 1);
+                final int to = from + random.nextInt(bytes.length - from + 1);
+                final byte value = bytes.length == 0 ? 0 : bytes[random.nextInt(bytes.length)];
+                final String message = Arrays.toString(bytes) + " " + from + " " + to + " " + value;
+                final int expected = naiveIndexOf(buffer, from, to, value);
+                Assert.assertEquals(message, expected, ByteScanner.indexOf(buffer, from, to, value));
+                Assert.assertEquals(message, expected, ByteScanner.swarIndexOf(buffer, from, to, value));
+                if (ByteScanner.VECTOR != null) {
+                    Assert.assertEquals(message, expected, ByteScanner.VECTOR.indexOf(buffer, from, to, value));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void vectorWithTheModule() {
+        // The build adds the module to the tests, so they cover the vector scan
+        Assert.assertEquals(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(),
+                ByteScanner.VECTOR != null);
+    }
+
+    @Test
+    public void notFound() {
+        ByteBuffer buffer = ByteBuffer.wrap("abcdefghijklmnopqrstuvwxyz\n".getBytes());
+        Assert.assertEquals(26, ByteScanner.indexOf(buffer, 0, 27, (byte) '\n'));
+        Assert.assertEquals(-1, ByteScanner.indexOf(buffer, 0, 26, (byte) '\n'));
+        Assert.assertEquals(-1, ByteScanner.indexOf(buffer, 5, 5, (byte) 'f'));
+    }
+}
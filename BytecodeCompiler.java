@@ -0,0 +1,407 @@
+import java.io.*;
+import java.lang.invoke.*;
+import java.util.*;
+
+public class BytecodeCompiler {
+    /*
+     * Turn a DFA into a JVM class at runtime
+     * Every DFA state becomes a block of bytecode, and a transition
+     * is a jump from a lookupswitch straight into the block of its target.
+     * The current state is the position in the code instead of a variable,
+     * so the JIT sees a plain state machine that it can inline and unroll.
+     *
+     * The class is defined as a hidden class, so it is unloaded together
+     * with the matcher. The class file is written by hand below.
+     * It uses class file version 49, which predates stack map frames,
+     * so the verifier infers the types and no frames have to be computed.
+     */
+    private static final String CLASS_NAME = "GeneratedCharMatcher";
+    private static final int CLASS_VERSION = 49;
+    // HotSpot interprets methods longer than this instead of compiling them, see -XX:HugeMethodLimit
+    private static final int MAX_CODE_LENGTH = 8000;
+
+    // Opcodes
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int ILOAD_2 = 0x1c;
+    private static final int ILOAD_3 = 0x1d;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ISTORE = 0x36;
+    private static final int ISTORE_2 = 0x3d;
+    private static final int ISTORE_3 = 0x3e;
+    private static final int IINC = 0x84;
+    private static final int IF_ICMPLT = 0xa1;
+    private static final int IF_ICMPGT = 0xa3;
+    private static final int LOOKUPSWITCH = 0xab;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int GOTO_W = 0xc8;
+
+    // Access flags
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    // Size of a state block without the range checks, the lookupswitch padding and pairs
+    private static final int BLOCK_SIZE = 30;
+    private static final int PROLOGUE_SIZE = 9;
+    private static final int RANGE_CHECK_SIZE = 21;
+    private static final int SWITCH_OFFSET = 21; // Offset of the lookupswitch in a block without range checks
+    private static final int TRAMPOLINE_SIZE = 5;
+
+    // Runs of chars longer than this are checked with comparisons instead of lookupswitch cases
+    private static final int MAX_SWITCH_RUN = 4;
+
+    // Generate, define and instantiate the matcher for the DFA
+    // Throws IllegalArgumentException if the DFA is too big for one method that the JIT compiles
+    public static CharMatcher compile(DFA dfa) throws IllegalArgumentException {
+        byte[] bytes = generate(dfa);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            MethodHandle constructor = lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class));
+            return (CharMatcher) constructor.invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot define the generated matcher", e);
+        }
+    }
+
+    // Write the class file of the matcher
+    static byte[] generate(DFA dfa) {
+        ConstantPool pool = new ConstantPool();
+        final int thisClass = pool.classRef(CLASS_NAME);
+        final int superClass = pool.classRef("java/lang/Object");
+        final int matcherInterface = pool.classRef("CharMatcher");
+        final int objectInit = pool.methodRef(false, "java/lang/Object", "<init>", "()V");
+        final int length = pool.methodRef(true, "java/lang/CharSequence", "length", "()I");
+        final int charAt = pool.methodRef(true, "java/lang/CharSequence", "charAt", "(I)C");
+        final int code = pool.utf8("Code");
+        final int initName = pool.utf8("<init>");
+        final int initType = pool.utf8("()V");
+        final int matchesName = pool.utf8("matches");
+        final int matchesType = pool.utf8("(Ljava/lang/CharSequence;)Z");
+
+        byte[] constructorCode = { (byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit,
+                (byte) RETURN };
+        byte[] matchesCode = generateMatches(dfa, pool, length, charAt);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0); // Minor version
+            out.writeShort(CLASS_VERSION);
+            pool.write(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1); // Interfaces
+            out.writeShort(matcherInterface);
+            out.writeShort(0); // Fields
+            out.writeShort(2); // Methods
+            writeMethod(out, initName, initType, code, 1, 1, constructorCode);
+            writeMethod(out, matchesName, matchesType, code, 2, 5, matchesCode);
+            out.writeShort(0); // Attributes
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Cannot happen for a byte array
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int type, int codeAttribute, int maxStack,
+            int maxLocals, byte[] code) throws IOException {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(name);
+        out.writeShort(type);
+        out.writeShort(1); // Attributes
+
+        out.writeShort(codeAttribute);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // Exception table
+        out.writeShort(0); // Attributes of the code
+    }
+
+    /*
+     * The code of boolean matches(CharSequence input)
+     * Locals: 0 this, 1 input, 2 input length, 3 index, 4 current char
+     *
+     * prologue:  n = input.length(); i = 0;
+     * state k:   if (i >= n) return accepting(k);
+     *            c = input.charAt(i++);
+     *            if (c >= lo && c <= hi) goto target state; for every long run of chars
+     *            switch (c) { case symbol: goto target state; default: return false; }
+     * fail:      return false;
+     *
+     * HotSpot only counts the backward jumps of goto and if instructions
+     * as loop iterations, which is what gets a long running loop compiled
+     * by C2. So a case that jumps back to an earlier block goes through
+     * a goto after the lookupswitch, otherwise the loop stays in C1 code.
+     */
+    private static byte[] generateMatches(DFA dfa, ConstantPool pool, int length, int charAt) {
+        // The start state comes first so that the prologue falls through into it
+        List<Integer> order = new ArrayList<>();
+        if (dfa.start() != DFA.DEAD) {
+            order.add(dfa.start());
+        }
+        for (int state = 0; state < dfa.stateCount(); state++) {
+            if (state != DFA.DEAD && state != dfa.start()) {
+                order.add(state);
+            }
+        }
+
+        // The live transitions of every state as runs of chars with the same target
+        // Long runs become range checks, and the chars of short runs become lookupswitch cases
+        Map<Integer, int[][]> checks = new HashMap<>();
+        Map<Integer, int[][]> cases = new HashMap<>();
+        for (int state : order) {
+            List<int[]> ranges = new ArrayList<>();
+            List<int[]> pairs = new ArrayList<>();
+            for (int[] run : runsOf(dfa, state)) {
+                if (run[1] - run[0] >= MAX_SWITCH_RUN) {
+                    ranges.add(run);
+                } else {
+                    for (int c = run[0]; c <= run[1]; c++) {
+                        pairs.add(new int[] { c, run[2] });
+                    }
+                }
+            }
+            checks.put(state, ranges.toArray(new int[0][]));
+            cases.put(state, pairs.toArray(new int[0][]));
+        }
+
+        // Lay out the blocks, every case that jumps back gets the goto of its target
+        int[] address = new int[dfa.stateCount()];
+        Arrays.fill(address, -1);
+        Map<Integer, List<Integer>> trampolines = new HashMap<>();
+        int position = PROLOGUE_SIZE;
+        for (int state : order) {
+            address[state] = position;
+            List<Integer> backward = new ArrayList<>();
+            for (int[] pair : cases.get(state)) {
+                if (address[pair[1]] != -1 && !backward.contains(pair[1])) {
+                    backward.add(pair[1]);
+                }
+            }
+            trampolines.put(state, backward);
+
+            final int switchAt = position + SWITCH_OFFSET + RANGE_CHECK_SIZE * checks.get(state).length;
+            position += BLOCK_SIZE + RANGE_CHECK_SIZE * checks.get(state).length + padding(switchAt)
+                    + 8 * cases.get(state).length + TRAMPOLINE_SIZE * backward.size();
+        }
+        final int fail = position;
+        final int size = fail + 2;
+        if (size > MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("DFA with " + dfa.stateCount() + " states is too big to generate: "
+                    + size + " bytes of code");
+        }
+
+        Code out = new Code(size);
+        out.u1(ALOAD_1);
+        out.u1(INVOKEINTERFACE).u2(length).u1(1).u1(0);
+        out.u1(ISTORE_2);
+        out.u1(ICONST_0);
+        out.u1(ISTORE_3);
+
+        for (int state : order) {
+            out.u1(ILOAD_3);
+            out.u1(ILOAD_2);
+            out.u1(IF_ICMPLT).u2(5);
+            out.u1(dfa.isAccepting(state) ? ICONST_1 : ICONST_0);
+            out.u1(IRETURN);
+            out.u1(ALOAD_1);
+            out.u1(ILOAD_3);
+            out.u1(INVOKEINTERFACE).u2(charAt).u1(2).u1(0);
+            out.u1(ISTORE).u1(4);
+            out.u1(IINC).u1(3).u1(1);
+
+            // Jump offsets are relative to the opcode of the jump
+            // The checks skip to the next check if the char is out of the range
+            for (int[] range : checks.get(state)) {
+                out.u1(ILOAD).u1(4);
+                out.u1(LDC_W).u2(pool.integer(range[0]));
+                out.u1(IF_ICMPLT).u2(RANGE_CHECK_SIZE - 5);
+                out.u1(ILOAD).u1(4);
+                out.u1(LDC_W).u2(pool.integer(range[1]));
+                out.u1(IF_ICMPGT).u2(RANGE_CHECK_SIZE - 13);
+                out.u1(GOTO_W).u4(address[range[2]] - out.position() + 1);
+            }
+
+            out.u1(ILOAD).u1(4);
+            final int switchAt = out.position();
+            out.u1(LOOKUPSWITCH);
+            for (int i = padding(switchAt); i > 0; i--) {
+                out.u1(0);
+            }
+            out.u4(fail - switchAt);
+            out.u4(cases.get(state).length);
+            List<Integer> backward = trampolines.get(state);
+            final int trampolineAt = out.position() + 8 * cases.get(state).length;
+            for (int[] pair : cases.get(state)) {
+                final int i = backward.indexOf(pair[1]);
+                out.u4(pair[0]);
+                out.u4((i == -1 ? address[pair[1]] : trampolineAt + TRAMPOLINE_SIZE * i) - switchAt);
+            }
+            for (int target : backward) {
+                out.u1(GOTO_W).u4(address[target] - out.position() + 1);
+            }
+        }
+
+        out.u1(ICONST_0);
+        out.u1(IRETURN);
+        return out.bytes();
+    }
+
+    // The chars with a live transition from the state, as sorted lo, hi, target runs
+    private static List<int[]> runsOf(DFA dfa, int state) {
+        Alphabet alphabet = dfa.alphabet();
+        List<int[]> intervals = new ArrayList<>();
+        for (int column = 1; column < dfa.width(); column++) {
+            final int target = dfa.target(state, column);
+            if (target == DFA.DEAD) {
+                continue;
+            }
+
+            char[] ranges = alphabet.intervals(column);
+            for (int i = 0; i < ranges.length; i += 2) {
+                intervals.add(new int[] { ranges[i], ranges[i + 1], target });
+            }
+        }
+        intervals.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+        // Adjacent intervals with the same target form one run
+        List<int[]> runs = new ArrayList<>();
+        for (int[] interval : intervals) {
+            int[] last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+            if (last != null && last[1] + 1 == interval[0] && last[2] == interval[2]) {
+                last[1] = interval[1];
+            } else {
+                runs.add(interval);
+            }
+        }
+        return runs;
+    }
+
+    // The padding after a lookupswitch opcode at the address
+    // The operands of a lookupswitch start at a multiple of four
+    private static int padding(int switchAt) {
+        return (4 - (switchAt + 1) % 4) % 4;
+    }
+
+    // A fixed size code buffer
+    private static final class Code {
+        private final byte[] bytes;
+        private int position;
+
+        Code(int size) {
+            bytes = new byte[size];
+            position = 0;
+        }
+
+        int position() {
+            return position;
+        }
+
+        Code u1(int value) {
+            bytes[position++] = (byte) value;
+            return this;
+        }
+
+        Code u2(int value) {
+            return u1(value >> 8).u1(value);
+        }
+
+        Code u4(int value) {
+            return u2(value >> 16).u2(value);
+        }
+
+        byte[] bytes() {
+            return bytes;
+        }
+    }
+
+    // The constant pool of the class file, entries are added once
+    private static final class ConstantPool {
+        private static final int UTF8 = 1;
+        private static final int INTEGER = 3;
+        private static final int CLASS = 7;
+        private static final int METHOD_REF = 10;
+        private static final int INTERFACE_METHOD_REF = 11;
+        private static final int NAME_AND_TYPE = 12;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> indices = new HashMap<>();
+        private int count = 1; // Index 0 is never used
+
+        int utf8(String value) {
+            return add("U" + value, () -> {
+                out.writeByte(UTF8);
+                out.writeUTF(value);
+            });
+        }
+
+        int integer(int value) {
+            return add("I" + value, () -> {
+                out.writeByte(INTEGER);
+                out.writeInt(value);
+            });
+        }
+
+        int classRef(String name) {
+            final int nameIndex = utf8(name);
+            return add("C" + name, () -> {
+                out.writeByte(CLASS);
+                out.writeShort(nameIndex);
+            });
+        }
+
+        int methodRef(boolean isInterface, String owner, String name, String type) {
+            final int ownerIndex = classRef(owner);
+            final int nameIndex = utf8(name);
+            final int typeIndex = utf8(type);
+            final int nameAndType = add("N" + name + type, () -> {
+                out.writeByte(NAME_AND_TYPE);
+                out.writeShort(nameIndex);
+                out.writeShort(typeIndex);
+            });
+            return add("M" + owner + "." + name + type, () -> {
+                out.writeByte(isInterface ? INTERFACE_METHOD_REF : METHOD_REF);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        void write(DataOutputStream target) throws IOException {
+            target.writeShort(count);
+            bytes.writeTo(target);
+        }
+
+        private int add(String key, Entry entry) {
+            Integer index = indices.get(key);
+            if (index != null) {
+                return index;
+            }
+
+            try {
+                entry.write();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // Cannot happen for a byte array
+            }
+            indices.put(key, count);
+            return count++;
+        }
+
+        private interface Entry {
+            void write() throws IOException;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+import org.junit.*;
+
+public class BytecodeCompiler_Test {
+    private static final String[] PATTERNS = {
+            "", "abc", "a*", "ab+c", "(a+|b)(a*|c)", "(ab|a)(bc|c)*", "((a|b)*c)+d", "x(y|z)*x",
+            "(a|b)*a(a|b)(a|b)(a|b)",
+            "[a-c]*d", "x[^x]*x", ".b.", "[a-x]+|[a-cq]z", "(a|b){2,4}c?",
+    };
+
+    private static final String[] INPUTS = {
+            "", "a", "b", "c", "abc", "abbc", "aaa", "ba", "aaac", "abcc", "abcbc", "abbcbc",
+            "cd", "abcd", "ccacbcd", "xx", "xyzzyx", "xyzq", "d", "q", "abbbb", "babab",
+    };
+
+    @Test
+    public void sameResultsAsNFA() {
+        for (String regEx : PATTERNS) {
+            Pattern interpreted = Pattern.compile(regEx);
+            CharMatcher generated = BytecodeCompiler.compile(DFA.build(interpreted.program()));
+            for (String input : INPUTS) {
+                Assert.assertEquals(regEx + " on " + input, interpreted.matches(input), generated.matches(input));
+            }
+        }
+    }
+
+    @Test
+    public void patternFlag() {
+        Pattern pattern = Pattern.compile("(ab|a)(bc|c)*", Pattern.GENERATE_BYTECODE);
+        Assert.assertEquals(true, pattern.matches("abcbc"));
+        Assert.assertEquals(true, pattern.matches(new StringBuilder("ac")));
+        Assert.assertEquals(false, pattern.matches("abcb"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refuseTooBigDFA() {
+        // 256 states take more code than the JIT compiles in one method
+        BytecodeCompiler.compile(DFA.build(Pattern.compile("(a|b)*a(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)").program()));
+    }
+
+    @Test
+    public void patternFallsBackToDFA() {
+        Pattern pattern = Pattern.compile("(a|b)*a(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)", Pattern.GENERATE_BYTECODE);
+        Assert.assertEquals(true, pattern.matches("bbabbbbbbb"));
+        Assert.assertEquals(false, pattern.matches("bbbabbbbbb"));
+    }
+}
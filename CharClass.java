@@ -0,0 +1,104 @@
+import java.util.*;
+
+public final class CharClass {
+    /*
+     * Sets of chars as sorted disjoint intervals
+     * A set is a char array of lo, hi pairs, so [a-z0-9] is { '0', '9', 'a', 'z' }.
+     * A symbol transition carries one such set, and a char is looked up
+     * with a binary search over the pairs.
+     */
+    public static final char[] ANY = { 0, '\n' - 1, '\n' + 1, Character.MAX_VALUE }; // '.', every char but '\n'
+    public static final char[] DIGIT = { '0', '9' };
+    public static final char[] WORD = { '0', '9', 'A', 'Z', '_', '_', 'a', 'z' };
+    public static final char[] SPACE = { '\t', '\r', ' ', ' ' };
+
+    private CharClass() {
+    }
+
+    // The set of a single char
+    public static char[] of(char c) {
+        return new char[] { c, c };
+    }
+
+    // Sort and merge the intervals, given as lo, hi pairs in any order
+    public static char[] normalize(List<char[]> intervals) {
+        List<char[]> sorted = new ArrayList<>(intervals);
+        sorted.sort((a, b) -> Character.compare(a[0], b[0]));
+
+        char[] out = new char[2 * sorted.size()];
+        int size = 0;
+        for (char[] interval : sorted) {
+            if (size > 0 && interval[0] <= out[size - 1] + 1) {
+                out[size - 1] = (char) Math.max(out[size - 1], interval[1]);
+            } else {
+                out[size++] = interval[0];
+                out[size++] = interval[1];
+            }
+        }
+
+        return Arrays.copyOf(out, size);
+    }
+
+    // The chars that are not in the set
+    public static char[] complement(char[] ranges) {
+        char[] out = new char[ranges.length + 2];
+        int size = 0;
+        int from = 0; // The first char not yet covered
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > from) {
+                out[size++] = (char) from;
+                out[size++] = (char) (ranges[i] - 1);
+            }
+            from = ranges[i + 1] + 1;
+        }
+        if (from <= Character.MAX_VALUE) {
+            out[size++] = (char) from;
+            out[size++] = Character.MAX_VALUE;
+        }
+
+        return Arrays.copyOf(out, size);
+    }
+
+    // Check if the pairs ranges[2 * from] ... ranges[2 * to - 1] contain the char
+    static boolean contains(char[] ranges, int from, int to, char c) {
+        int lo = from;
+        int hi = to - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (c < ranges[2 * mid]) {
+                hi = mid - 1;
+            } else if (c > ranges[2 * mid + 1]) {
+                lo = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The set in bracket notation, a single char is written as it is
+    public static String toString(char[] ranges) {
+        if (ranges.length == 2 && ranges[0] == ranges[1]) {
+            return Character.toString(ranges[0]);
+        }
+
+        StringBuilder out = new StringBuilder("[");
+        for (int i = 0; i < ranges.length; i += 2) {
+            appendChar(out, ranges[i]);
+            if (ranges[i + 1] != ranges[i]) {
+                out.append('-');
+                appendChar(out, ranges[i + 1]);
+            }
+        }
+        return out.append(']').toString();
+    }
+
+    // Control chars and chars beyond ASCII are written as unicode escapes
+    private static void appendChar(StringBuilder out, char c) {
+        if (c >= ' ' && c < 0x7f) {
+            out.append(c);
+        } else {
+            out.append(String.format("\\u%04x", (int) c));
+        }
+    }
+}
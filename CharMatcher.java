@@ -0,0 +1,4 @@
+public interface CharMatcher {
+    // Check if the whole input matches the regular expression
+    boolean matches(CharSequence input);
+}
@@ -0,0 +1,932 @@
+import java.util.*;
+
+public class CompiledNFA {
+    /*
+     * A flat representation of Thompson's NFA
+     * Every state is a dense integer id, and the transitions are
+     * stored in primitive arrays instead of State and Transition objects
+     * The ids are assigned in the same depth first order as printTable(),
+     * except that states which only pass on a single epsilon transition are left out
+     *
+     * A program compiled from a pattern set has one accept state per pattern,
+     * and each of them is tagged with the index of its pattern
+     */
+    public static final int NONE = -1; // No symbol transition, or no accept state
+
+    final int stateCount;
+    final int start;
+    final int accept; // The accept state of a single pattern, NONE for a pattern set
+    final int patternCount;
+    final int[] acceptId; // The pattern accepted in each state, NONE if the state does not accept
+
+    /*
+     * The symbol transition of state s accepts the chars of the intervals
+     * ranges[2 * rangeStart[s]] ... ranges[2 * rangeStart[s + 1] - 1], as lo, hi pairs,
+     * so a character class is one transition instead of a union of symbols
+     */
+    final int[] rangeStart;
+    final char[] ranges;
+    final int[] next; // The target of the symbol transition, NONE if there is none
+
+    /*
+     * The epsilon closure of state s is
+     * closureStates[closureStart[s]] ... closureStates[closureStart[s + 1] - 1]
+     * Only the states that matter while matching are kept in a closure,
+     * namely the states with a symbol transition and the accept states,
+     * and only if an accept state can still be reached from them.
+     * So an empty set of current states means that no input can match anymore.
+     */
+    final int[] closureStart;
+    final int[] closureStates;
+
+    // Table driven engines index their rows by the class of a char in this alphabet
+    final Alphabet alphabet;
+
+    /*
+     * A counted repetition of a single char or class is a counting state,
+     * whose transition leads to a counter gate instead of a copy per count,
+     * see NFA.repeat(). Counter k keeps a count set for its counting state:
+     * bit j is set if a thread in the state took j chars of the class so far,
+     * and the set is the words countWords[k] ... countWords[k + 1] - 1 of Counts.
+     * Taking the transition adds one to every count. The counts below
+     * countMax[k] stay in the counting state, and the threads with a count
+     * of at least countMin[k] add the closure of countExit[k] as well.
+     * Without an upper bound the counts from countMin[k] on are all the same.
+     *
+     * Matcher and PatternSet step with count sets, the other engines match
+     * the plain states of withoutCounters().
+     */
+    final int[] counterOf; // The counter of each state, NONE if the state does not count
+    final int[] countMin;
+    final int[] countMax; // RegexParser.UNBOUNDED for "{m,}"
+    final int[] countExit;
+    final int[] countWords;
+
+    // The program with its counters unrolled, built on first use
+    // Racing threads may build it twice, but they build equal immutable programs
+    private volatile CompiledNFA unrolled;
+
+    /*
+     * A program with the given closures
+     * A thread that takes the symbol transition of state s adds the closure
+     * of next[s] to the next states, and matching starts with the closure of start.
+     * Thompson's NFA gets its closures from the epsilon transitions,
+     * while GlushkovBuilder fills them with follow sets directly.
+     */
+    CompiledNFA(int start, int[] acceptId, int patternCount, int[] rangeStart, char[] ranges, int[] next,
+            int[] closureStart, int[] closureStates) {
+        this(start, acceptId, patternCount, rangeStart, ranges, next, closureStart, closureStates,
+                alphabetOf(rangeStart, ranges, next));
+    }
+
+    // A program with a known alphabet, as AutomatonFile loads it
+    CompiledNFA(int start, int[] acceptId, int patternCount, int[] rangeStart, char[] ranges, int[] next,
+            int[] closureStart, int[] closureStates, Alphabet alphabet) {
+        this.stateCount = next.length;
+        this.start = start;
+        this.acceptId = acceptId;
+        this.patternCount = patternCount;
+        this.rangeStart = rangeStart;
+        this.ranges = ranges;
+        this.next = next;
+        this.closureStart = closureStart;
+        this.closureStates = closureStates;
+
+        int single = NONE;
+        for (int s = 0; s < stateCount && patternCount == 1; s++) {
+            if (acceptId[s] != NONE) {
+                single = s;
+            }
+        }
+        accept = single;
+        this.alphabet = alphabet;
+
+        counterOf = new int[stateCount];
+        Arrays.fill(counterOf, NONE);
+        countMin = new int[0];
+        countMax = new int[0];
+        countExit = new int[0];
+        countWords = new int[1];
+    }
+
+    // The program with the counters of compile()
+    private CompiledNFA(CompiledNFA program, int[] counterOf, int[] countMin, int[] countMax, int[] countExit) {
+        this.stateCount = program.stateCount;
+        this.start = program.start;
+        this.accept = program.accept;
+        this.acceptId = program.acceptId;
+        this.patternCount = program.patternCount;
+        this.rangeStart = program.rangeStart;
+        this.ranges = program.ranges;
+        this.next = program.next;
+        this.closureStart = program.closureStart;
+        this.closureStates = program.closureStates;
+        this.alphabet = program.alphabet;
+        this.counterOf = counterOf;
+        this.countMin = countMin;
+        this.countMax = countMax;
+        this.countExit = countExit;
+
+        countWords = new int[countMin.length + 1];
+        for (int k = 0; k < countMin.length; k++) {
+            countWords[k + 1] = countWords[k] + (counts(countMin[k], countMax[k]) + Long.SIZE - 1) / Long.SIZE;
+        }
+    }
+
+    // The number of counts that a thread in a counting state can have,
+    // 0 ... max - 1, or 0 ... min without an upper bound
+    static int counts(int min, int max) {
+        return max == RegexParser.UNBOUNDED ? min + 1 : max;
+    }
+
+    private static Alphabet alphabetOf(int[] rangeStart, char[] ranges, int[] next) {
+        List<char[]> transitions = new ArrayList<>();
+        for (int s = 0; s < next.length; s++) {
+            if (next[s] != NONE) {
+                transitions.add(Arrays.copyOfRange(ranges, 2 * rangeStart[s], 2 * rangeStart[s + 1]));
+            }
+        }
+        return new Alphabet(transitions);
+    }
+
+    // A program whose closures follow the epsilon transitions
+    private static CompiledNFA withEpsilons(int start, int[] acceptId, int patternCount, int[] rangeStart,
+            char[] ranges, int[] next, int[] epStart, int[] epTargets) {
+        int[] closureStart = new int[next.length + 1];
+        int[] closureStates = buildClosures(next, acceptId, epStart, epTargets,
+                findLive(next, acceptId, epStart, epTargets), closureStart);
+        return new CompiledNFA(start, acceptId, patternCount, rangeStart, ranges, next, closureStart,
+                closureStates);
+    }
+
+    // Flatten the state graph reachable from start
+    public static CompiledNFA compile(State start, State end) {
+        return compile(start, new State[] { end });
+    }
+
+    // Flatten the state graph of a pattern set
+    // ends[i] is the accept state of the i-th pattern
+    public static CompiledNFA compile(State start, State[] ends) {
+        Set<State> accepting = new HashSet<>(Arrays.asList(ends));
+        Map<State, State> bypassed = new HashMap<>();
+
+        // Number the states in depth first order
+        // The stack is explicit so that long patterns cannot overflow the call stack
+        Map<State, Integer> ids = new HashMap<>();
+        List<State> states = new ArrayList<>();
+        Deque<State> stack = new ArrayDeque<>();
+        stack.push(bypass(start, accepting, bypassed));
+        while (!stack.isEmpty()) {
+            State curr = stack.pop();
+            if (ids.containsKey(curr)) {
+                continue;
+            }
+
+            ids.put(curr, states.size());
+            states.add(curr);
+
+            // Push the neighbors in reverse so that they are visited in order
+            if (curr.to != null) {
+                stack.push(bypass(curr.to.next, accepting, bypassed));
+            } else {
+                for (int i = curr.epTo.size() - 1; i >= 0; i--) {
+                    stack.push(bypass(curr.epTo.get(i), accepting, bypassed));
+                }
+            }
+        }
+
+        final int n = states.size();
+        int[] rangeStart = new int[n + 1];
+        int[] next = new int[n];
+        int[] epStart = new int[n + 1];
+
+        int epCount = 0;
+        int rangeCount = 0;
+        for (int i = 0; i < n; i++) {
+            State curr = states.get(i);
+            epCount += curr.epTo.size();
+            rangeCount += curr.to != null ? curr.to.ranges.length / 2 : 0;
+        }
+        int[] epTargets = new int[epCount];
+        char[] ranges = new char[2 * rangeCount];
+
+        epCount = 0;
+        rangeCount = 0;
+        for (int i = 0; i < n; i++) {
+            State curr = states.get(i);
+            rangeStart[i] = rangeCount;
+            if (curr.to != null) {
+                System.arraycopy(curr.to.ranges, 0, ranges, 2 * rangeCount, curr.to.ranges.length);
+                rangeCount += curr.to.ranges.length / 2;
+                next[i] = ids.get(bypass(curr.to.next, accepting, bypassed));
+            } else {
+                next[i] = NONE;
+            }
+
+            epStart[i] = epCount;
+            for (State neighbor : curr.epTo) {
+                epTargets[epCount++] = ids.get(bypass(neighbor, accepting, bypassed));
+            }
+        }
+        epStart[n] = epCount;
+        rangeStart[n] = rangeCount;
+
+        int[] acceptId = new int[n];
+        Arrays.fill(acceptId, NONE);
+        for (int i = 0; i < ends.length; i++) {
+            // An end state is unreachable only if the graph is broken
+            Integer end = ids.get(ends[i]);
+            if (end != null) {
+                acceptId[end] = i;
+            }
+        }
+
+        // The first epsilon transition of a counter gate goes back to the counting state,
+        // and the second one is the exit
+        int[] counterOf = new int[n];
+        Arrays.fill(counterOf, NONE);
+        List<State> gates = new ArrayList<>();
+        for (State curr : states) {
+            if (curr.bounds != null) {
+                counterOf[ids.get(bypass(curr.epTo.get(0), accepting, bypassed))] = gates.size();
+                gates.add(curr);
+            }
+        }
+
+        CompiledNFA program = withEpsilons(0, acceptId, ends.length, rangeStart, ranges, next, epStart, epTargets);
+        if (gates.isEmpty()) {
+            return program;
+        }
+
+        int[] countMin = new int[gates.size()];
+        int[] countMax = new int[gates.size()];
+        int[] countExit = new int[gates.size()];
+        for (int k = 0; k < gates.size(); k++) {
+            countMin[k] = gates.get(k).bounds[0];
+            countMax[k] = gates.get(k).bounds[1];
+            countExit[k] = ids.get(bypass(gates.get(k).epTo.get(1), accepting, bypassed));
+        }
+        return new CompiledNFA(program, counterOf, countMin, countMax, countExit);
+    }
+
+    /*
+     * The state that the epsilon transitions into the state lead to in the end
+     * A state without a symbol transition and with a single epsilon transition,
+     * like the end of the first part of a concatenation, only passes the
+     * threads on. It is not numbered at all, and the transitions into it
+     * go straight to the next state that does something.
+     * Every loop of Thompson's NFA passes a state with two epsilon transitions,
+     * so following the single ones always ends.
+     */
+    private static State bypass(State state, Set<State> accepting, Map<State, State> bypassed) {
+        State target = state;
+        while (target.to == null && target.epTo.size() == 1 && !accepting.contains(target)) {
+            State known = bypassed.get(target);
+            if (known != null) {
+                target = known;
+                break;
+            }
+            target = target.epTo.get(0);
+        }
+        if (target != state) {
+            bypassed.put(state, target);
+        }
+        return target;
+    }
+
+    public int stateCount() {
+        return stateCount;
+    }
+
+    // Check if the program has counting states, which only the steps with count sets can match
+    public boolean hasCounters() {
+        return countMin.length > 0;
+    }
+
+    /*
+     * The same program with every counter unrolled into plain states
+     * The counting state stays the state of the count 0, and every
+     * further count gets a copy of it. The transition of the state of count j
+     * leads to a new arrival state, whose closure is the state of count j + 1
+     * while that is below the upper bound, and the closure of the exit
+     * once j + 1 reached the lower bound. These are the copies that a counted
+     * repetition would take without counters, so the table driven engines
+     * and Searcher match the program as plain sets of states.
+     */
+    public CompiledNFA withoutCounters() {
+        if (!hasCounters()) {
+            return this;
+        }
+        CompiledNFA result = unrolled;
+        if (result == null) {
+            result = unroll();
+            unrolled = result;
+        }
+        return result;
+    }
+
+    private CompiledNFA unroll() {
+        // The states of counts 1 ... L - 1 of counter k are first[k] ... first[k] + L - 2,
+        // and the arrival states of counts 0 ... L - 1 follow them
+        int[] first = new int[countMin.length];
+        int[] state = new int[countMin.length]; // The counting state of every counter
+        for (int s = 0; s < stateCount; s++) {
+            if (counterOf[s] != NONE) {
+                state[counterOf[s]] = s;
+            }
+        }
+        int n = stateCount;
+        int added = 0; // The added closure entries
+        for (int k = 0; k < countMin.length; k++) {
+            final int length = counts(countMin[k], countMax[k]);
+            final int exit = closureStart[countExit[k] + 1] - closureStart[countExit[k]];
+            first[k] = n;
+            n += 2 * length - 1;
+            added += 2 * (length - 1) + (countMax[k] == RegexParser.UNBOUNDED ? 1 : 0)
+                    + (length - Math.max(countMin[k] - 1, 0)) * exit;
+        }
+
+        int[] unrolledAcceptId = Arrays.copyOf(acceptId, n);
+        Arrays.fill(unrolledAcceptId, stateCount, n, NONE);
+        int[] unrolledNext = Arrays.copyOf(next, n);
+        Arrays.fill(unrolledNext, stateCount, n, NONE);
+        int[] unrolledRangeStart = Arrays.copyOf(rangeStart, n + 1);
+        int[] unrolledClosureStart = Arrays.copyOf(closureStart, n + 1);
+        int[] unrolledClosureStates = Arrays.copyOf(closureStates, closureStates.length + added);
+        int rangeCount = rangeStart[stateCount];
+        int size = closureStates.length;
+        List<char[]> copies = new ArrayList<>();
+        for (int k = 0; k < countMin.length; k++) {
+            final int length = counts(countMin[k], countMax[k]);
+            final char[] counted = Arrays.copyOfRange(ranges, 2 * rangeStart[state[k]], 2 * rangeStart[state[k] + 1]);
+            final int arrival = first[k] + length - 1;
+            for (int j = 0; j < length; j++) {
+                // The state of count j, and its own closure
+                final int s = j == 0 ? state[k] : first[k] + j - 1;
+                unrolledNext[s] = arrival + j;
+                if (j > 0) {
+                    unrolledRangeStart[s] = rangeCount;
+                    rangeCount += counted.length / 2;
+                    copies.add(counted);
+                    unrolledClosureStart[s] = size;
+                    unrolledClosureStates[size++] = s;
+                }
+            }
+
+            for (int j = 0; j < length; j++) {
+                unrolledRangeStart[arrival + j] = rangeCount;
+                unrolledClosureStart[arrival + j] = size;
+                if (j + 1 < length) {
+                    unrolledClosureStates[size++] = first[k] + j;
+                } else if (countMax[k] == RegexParser.UNBOUNDED) {
+                    unrolledClosureStates[size++] = first[k] + j - 1;
+                }
+                if (j + 1 >= countMin[k]) {
+                    for (int i = closureStart[countExit[k]]; i < closureStart[countExit[k] + 1]; i++) {
+                        unrolledClosureStates[size++] = closureStates[i];
+                    }
+                }
+            }
+        }
+        unrolledRangeStart[n] = rangeCount;
+        unrolledClosureStart[n] = size;
+
+        char[] unrolledRanges = Arrays.copyOf(ranges, 2 * rangeCount);
+        int offset = ranges.length;
+        for (char[] counted : copies) {
+            System.arraycopy(counted, 0, unrolledRanges, offset, counted.length);
+            offset += counted.length;
+        }
+        return new CompiledNFA(start, unrolledAcceptId, patternCount, unrolledRangeStart, unrolledRanges,
+                unrolledNext, unrolledClosureStart, unrolledClosureStates, alphabet);
+    }
+
+    /*
+     * Lower the program to one that matches UTF-8 bytes instead of chars
+     * Every byte is a symbol with the same value as the byte, between 0 and 255,
+     * and a symbol transition on a char becomes a chain of transitions
+     * on the bytes of its UTF-8 encoding.
+     * The chars of a character class are split into ranges that are encoded
+     * as one chain of byte ranges each, and a state with several chains
+     * gets epsilon transitions to the start of every chain.
+     * The last step of a chain leads to a new arrival state, whose epsilon
+     * transitions go straight to the closure of the target in this program,
+     * so it accepts the UTF-8 encoding of the same inputs.
+     *
+     * A supplementary char is two chars here, a high and a low surrogate,
+     * but one sequence of 4 bytes in UTF-8. So a transition on high surrogates
+     * also gets 4 byte chains for every transition on low surrogates in the
+     * closure after it, and these chains arrive at the target of the second one.
+     */
+    public CompiledNFA toUtf8() {
+        if (hasCounters()) {
+            return withoutCounters().toUtf8();
+        }
+
+        // The chains of byte ranges of every transition
+        List<List<char[][]>> chains = new ArrayList<>();
+        List<List<Integer>> chainTargets = new ArrayList<>(); // The target in this program of every chain
+        int n = stateCount;
+        for (int s = 0; s < stateCount; s++) {
+            List<char[][]> chain = new ArrayList<>();
+            List<Integer> targets = new ArrayList<>();
+            if (next[s] != NONE) {
+                for (int i = rangeStart[s]; i < rangeStart[s + 1]; i++) {
+                    utf8Sequences(ranges[2 * i], ranges[2 * i + 1], chain);
+                }
+                chain = mergeSingleBytes(chain);
+                while (targets.size() < chain.size()) {
+                    targets.add(next[s]);
+                }
+                surrogatePairs(s, chain, targets);
+
+                // Every step after the first one needs a new state, and so does
+                // the first step if there are several chains
+                for (char[][] steps : chain) {
+                    n += steps.length - (chain.size() == 1 ? 1 : 0);
+                }
+            }
+            chains.add(chain);
+            chainTargets.add(targets);
+        }
+
+        // The arrival state of state t is n + t
+        final int chained = n;
+        n += stateCount;
+
+        char[][] byteRanges = new char[n][];
+        int[] byteNext = new int[n];
+        int[] byteAcceptId = Arrays.copyOf(acceptId, n);
+        Arrays.fill(byteAcceptId, stateCount, n, NONE);
+        Arrays.fill(byteNext, NONE);
+        List<List<Integer>> heads = new ArrayList<>(); // The starts of the chains of every state
+
+        int added = stateCount;
+        for (int s = 0; s < stateCount; s++) {
+            List<Integer> starts = new ArrayList<>();
+            heads.add(starts);
+            for (int c = 0; c < chains.get(s).size(); c++) {
+                final char[][] steps = chains.get(s).get(c);
+                int from = s;
+                if (chains.get(s).size() > 1) {
+                    from = added++;
+                    starts.add(from);
+                }
+
+                for (int i = 0; i < steps.length; i++) {
+                    byteRanges[from] = steps[i];
+                    byteNext[from] = i == steps.length - 1 ? chained + chainTargets.get(s).get(c) : added;
+                    from = added;
+                    if (i < steps.length - 1) {
+                        added++;
+                    }
+                }
+            }
+        }
+
+        int[] byteRangeStart = new int[n + 1];
+        int rangeCount = 0;
+        for (int s = 0; s < n; s++) {
+            byteRangeStart[s] = rangeCount;
+            rangeCount += byteRanges[s] != null ? byteRanges[s].length / 2 : 0;
+        }
+        byteRangeStart[n] = rangeCount;
+        char[] flatRanges = new char[2 * rangeCount];
+        for (int s = 0; s < n; s++) {
+            if (byteRanges[s] != null) {
+                System.arraycopy(byteRanges[s], 0, flatRanges, 2 * byteRangeStart[s], byteRanges[s].length);
+            }
+        }
+
+        // Only the states with several chains and the arrival states have epsilon transitions
+        int[] epStart = new int[n + 1];
+        List<Integer> epTargets = new ArrayList<>();
+        for (int s = 0; s < n; s++) {
+            epStart[s] = epTargets.size();
+            if (s < stateCount) {
+                epTargets.addAll(heads.get(s));
+            } else if (s >= chained) {
+                final int target = s - chained;
+                for (int i = closureStart[target]; i < closureStart[target + 1]; i++) {
+                    epTargets.add(closureStates[i]);
+                }
+            }
+        }
+        epStart[n] = epTargets.size();
+
+        int[] targets = new int[epTargets.size()];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = epTargets.get(i);
+        }
+        return withEpsilons(chained + start, byteAcceptId, patternCount, byteRangeStart, flatRanges, byteNext,
+                epStart, targets);
+    }
+
+    // Add the 4 byte chains of the supplementary chars that state s starts
+    // Their low surrogate is accepted by a state t in the closure after s,
+    // so the chains lead to the target of t
+    private void surrogatePairs(int s, List<char[][]> out, List<Integer> targets) {
+        for (int i = rangeStart[s]; i < rangeStart[s + 1]; i++) {
+            final int highLo = Math.max(ranges[2 * i], Character.MIN_HIGH_SURROGATE);
+            final int highHi = Math.min(ranges[2 * i + 1], Character.MAX_HIGH_SURROGATE);
+            if (highLo > highHi) {
+                continue;
+            }
+
+            for (int j = closureStart[next[s]]; j < closureStart[next[s] + 1]; j++) {
+                final int t = closureStates[j];
+                for (int k = rangeStart[t]; next[t] != NONE && k < rangeStart[t + 1]; k++) {
+                    final int lowLo = Math.max(ranges[2 * k], Character.MIN_LOW_SURROGATE);
+                    final int lowHi = Math.min(ranges[2 * k + 1], Character.MAX_LOW_SURROGATE);
+                    if (lowLo > lowHi) {
+                        continue;
+                    }
+
+                    // With every low surrogate the chars are one range, otherwise one range per high surrogate
+                    if (lowLo == Character.MIN_LOW_SURROGATE && lowHi == Character.MAX_LOW_SURROGATE) {
+                        utf8Sequences(Character.toCodePoint((char) highLo, (char) lowLo),
+                                Character.toCodePoint((char) highHi, (char) lowHi), out);
+                    } else {
+                        for (int high = highLo; high <= highHi; high++) {
+                            utf8Sequences(Character.toCodePoint((char) high, (char) lowLo),
+                                    Character.toCodePoint((char) high, (char) lowHi), out);
+                        }
+                    }
+                    while (targets.size() < out.size()) {
+                        targets.add(next[t]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int utf8Length(int c) {
+        return c < 0x80 ? 1 : c < 0x800 ? 2 : c < 0x10000 ? 3 : 4;
+    }
+
+    /*
+     * Split the chars lo ... hi into ranges whose UTF-8 encodings are
+     * sequences of byte ranges, and add these sequences to the list
+     * A range is split at the lengths of the encodings first, and then until
+     * every byte but the first ranges over all of its continuation bytes
+     * or over a single one.
+     * A lone surrogate is encoded on its own, so it never matches valid UTF-8,
+     * and supplementary chars from surrogatePairs() take 4 bytes
+     */
+    private static void utf8Sequences(int lo, int hi, List<char[][]> out) {
+        for (int limit : new int[] { 0x7f, 0x7ff, 0xffff }) {
+            if (lo <= limit && hi > limit) {
+                utf8Sequences(lo, limit, out);
+                utf8Sequences(limit + 1, hi, out);
+                return;
+            }
+        }
+
+        final int length = utf8Length(lo);
+        for (int i = 1; i < length; i++) {
+            final int mask = (1 << 6 * i) - 1;
+            if ((lo & ~mask) != (hi & ~mask)) {
+                if ((lo & mask) != 0) {
+                    utf8Sequences(lo, lo | mask, out);
+                    utf8Sequences((lo | mask) + 1, hi, out);
+                    return;
+                }
+                if ((hi & mask) != mask) {
+                    utf8Sequences(lo, (hi & ~mask) - 1, out);
+                    utf8Sequences(hi & ~mask, hi, out);
+                    return;
+                }
+            }
+        }
+
+        byte[] first = new byte[4];
+        byte[] last = new byte[4];
+        encodeUtf8(lo, first);
+        encodeUtf8(hi, last);
+        char[][] steps = new char[length][];
+        for (int i = 0; i < length; i++) {
+            steps[i] = new char[] { (char) (first[i] & 0xff), (char) (last[i] & 0xff) };
+        }
+        out.add(steps);
+    }
+
+    // Merge the chains of a single byte into one transition on all of their ranges
+    private static List<char[][]> mergeSingleBytes(List<char[][]> chains) {
+        List<char[]> singles = new ArrayList<>();
+        List<char[][]> merged = new ArrayList<>();
+        for (char[][] steps : chains) {
+            if (steps.length == 1) {
+                singles.add(steps[0]);
+            } else {
+                merged.add(steps);
+            }
+        }
+        if (!singles.isEmpty()) {
+            merged.add(0, new char[][] { CharClass.normalize(singles) });
+        }
+        return merged;
+    }
+
+    // Write the UTF-8 encoding of the code point and return its length
+    private static int encodeUtf8(int c, byte[] out) {
+        if (c < 0x80) {
+            out[0] = (byte) c;
+            return 1;
+        } else if (c < 0x800) {
+            out[0] = (byte) (0xc0 | c >> 6);
+            out[1] = (byte) (0x80 | c & 0x3f);
+            return 2;
+        } else if (c < 0x10000) {
+            out[0] = (byte) (0xe0 | c >> 12);
+            out[1] = (byte) (0x80 | c >> 6 & 0x3f);
+            out[2] = (byte) (0x80 | c & 0x3f);
+            return 3;
+        } else {
+            out[0] = (byte) (0xf0 | c >> 18);
+            out[1] = (byte) (0x80 | c >> 12 & 0x3f);
+            out[2] = (byte) (0x80 | c >> 6 & 0x3f);
+            out[3] = (byte) (0x80 | c & 0x3f);
+            return 4;
+        }
+    }
+
+    // Find the states from which an accept state can be reached
+    // Searches backwards from the accept states
+    private static boolean[] findLive(int[] next, int[] acceptId, int[] epStart, int[] epTargets) {
+        final int stateCount = next.length;
+        // Reverse every transition
+        int[] inStart = new int[stateCount + 1];
+        for (int s = 0; s < stateCount; s++) {
+            if (next[s] != NONE) {
+                inStart[next[s] + 1]++;
+            }
+            for (int i = epStart[s]; i < epStart[s + 1]; i++) {
+                inStart[epTargets[i] + 1]++;
+            }
+        }
+        for (int s = 0; s < stateCount; s++) {
+            inStart[s + 1] += inStart[s];
+        }
+        int[] sources = new int[inStart[stateCount]];
+        int[] fill = Arrays.copyOf(inStart, stateCount);
+        for (int s = 0; s < stateCount; s++) {
+            if (next[s] != NONE) {
+                sources[fill[next[s]]++] = s;
+            }
+            for (int i = epStart[s]; i < epStart[s + 1]; i++) {
+                sources[fill[epTargets[i]]++] = s;
+            }
+        }
+
+        boolean[] live = new boolean[stateCount];
+        int[] stack = new int[stateCount];
+        int top = 0;
+        for (int s = 0; s < stateCount; s++) {
+            if (acceptId[s] != NONE) {
+                live[s] = true;
+                stack[top++] = s;
+            }
+        }
+        while (top > 0) {
+            final int curr = stack[--top];
+            for (int i = inStart[curr]; i < inStart[curr + 1]; i++) {
+                if (!live[sources[i]]) {
+                    live[sources[i]] = true;
+                    stack[top++] = sources[i];
+                }
+            }
+        }
+
+        return live;
+    }
+
+    // Compute the epsilon closure of every state once
+    // Fills closureStart and returns the concatenated closures
+    private static int[] buildClosures(int[] next, int[] acceptId, int[] epStart, int[] epTargets, boolean[] live,
+            int[] closureStart) {
+        final int stateCount = next.length;
+        SparseSet visited = new SparseSet(stateCount);
+        int[] stack = new int[stateCount];
+        int[] closures = new int[stateCount];
+        int size = 0;
+
+        for (int s = 0; s < stateCount; s++) {
+            closureStart[s] = size;
+
+            // Depth first search over the epsilon transitions
+            visited.clear();
+            visited.add(s);
+            int top = 0;
+            stack[top++] = s;
+            while (top > 0) {
+                final int curr = stack[--top];
+                if (live[curr] && (next[curr] != NONE || acceptId[curr] != NONE)) {
+                    if (size == closures.length) {
+                        closures = Arrays.copyOf(closures, size * 2);
+                    }
+                    closures[size++] = curr;
+                }
+
+                for (int i = epStart[curr]; i < epStart[curr + 1]; i++) {
+                    final int neighbor = epTargets[i];
+                    if (visited.add(neighbor)) {
+                        stack[top++] = neighbor;
+                    }
+                }
+            }
+        }
+        closureStart[stateCount] = size;
+
+        return Arrays.copyOf(closures, size);
+    }
+
+    // Add the epsilon closure of the state to the set
+    void addClosure(SparseSet set, int state) {
+        for (int i = closureStart[state]; i < closureStart[state + 1]; i++) {
+            set.add(closureStates[i]);
+        }
+    }
+
+    // Fill the set with the epsilon closure of the start state
+    // The closure has no duplicates, so this is a plain array copy
+    void loadStart(SparseSet set) {
+        set.clear();
+        set.addAll(closureStates, closureStart[start], closureStart[start + 1]);
+    }
+
+    // Compute the states reachable from the current states with the input symbol
+    // The result is the union of the closures of the symbol transition targets
+    // A program with counters needs the step with count sets instead
+    // Returns the number of closures that were added
+    int step(SparseSet current, char c, SparseSet next) {
+        next.clear();
+        int closures = 0;
+        for (int i = 0; i < current.size(); i++) {
+            final int state = current.get(i);
+            if (hasTransition(state, c)) {
+                addClosure(next, this.next[state]);
+                closures++;
+            }
+        }
+        return closures;
+    }
+
+    /*
+     * The count sets of the counting states in a set of states
+     * Only the words low[k] ... high[k] - 1 of counter k can be nonzero,
+     * and all of them are zero unless the counting state is in the set.
+     * So a step only shifts the words that hold counts, which are one or two
+     * for a single run through a large bound.
+     */
+    static final class Counts {
+        final long[] words;
+        final int[] low;
+        final int[] high;
+
+        Counts(CompiledNFA program) {
+            words = new long[program.countWords[program.countMin.length]];
+            low = Arrays.copyOf(program.countWords, program.countMin.length);
+            high = low.clone();
+        }
+
+        // Empty the set of counter k
+        void clear(int k) {
+            Arrays.fill(words, low[k], high[k], 0);
+            high[k] = low[k];
+        }
+
+        // Add the counts of the words first ... last to the set of counter k
+        void add(int k, int first, int last, long[] counts) {
+            for (int w = first; w <= last; w++) {
+                words[w] |= counts[w];
+            }
+            include(k, first, last);
+        }
+
+        // Add the count 0 to the set of counter k, which starts at the word
+        void enter(int k, int word) {
+            words[word] |= 1;
+            include(k, word, word);
+        }
+
+        private void include(int k, int first, int last) {
+            if (low[k] == high[k]) {
+                low[k] = first;
+                high[k] = last + 1;
+            } else {
+                low[k] = Math.min(low[k], first);
+                high[k] = Math.max(high[k], last + 1);
+            }
+        }
+    }
+
+    // Like loadStart(), with the count sets of the counting states
+    void loadStart(SparseSet set, Counts counts) {
+        set.clear();
+        for (int k = 0; k < countMin.length; k++) {
+            counts.clear(k);
+        }
+        addClosure(set, start, counts);
+    }
+
+    // Like step(), with the count sets of the current and the next states
+    // A program with counters must be matched with these
+    // Every current count set is left empty
+    int step(SparseSet current, char c, SparseSet next, Counts counts, Counts nextCounts) {
+        next.clear();
+        int closures = 0;
+        for (int i = 0; i < current.size(); i++) {
+            final int state = current.get(i);
+            final int k = counterOf[state];
+            if (hasTransition(state, c)) {
+                if (k == NONE) {
+                    addClosure(next, this.next[state], nextCounts);
+                } else {
+                    count(state, counts, next, nextCounts);
+                }
+                closures++;
+            } else if (k != NONE) {
+                counts.clear(k);
+            }
+        }
+        return closures;
+    }
+
+    // Add the epsilon closure of the state, a counting state enters it with the count 0
+    private void addClosure(SparseSet set, int state, Counts counts) {
+        for (int i = closureStart[state]; i < closureStart[state + 1]; i++) {
+            final int reached = closureStates[i];
+            set.add(reached);
+            final int k = counterOf[reached];
+            if (k != NONE) {
+                counts.enter(k, countWords[k]);
+            }
+        }
+    }
+
+    /*
+     * Take the transition of counting state s with every count of its count set
+     * A count j becomes j + 1, which stays in s below the upper bound,
+     * or at the lower bound without an upper bound, and leaves through
+     * the exit from the lower bound on. The set is shifted by one in
+     * a single pass over its words, and the largest count decides
+     * if any thread leaves.
+     */
+    private void count(int s, Counts counts, SparseSet next, Counts nextCounts) {
+        final int k = counterOf[s];
+        final int to = countWords[k + 1];
+        final int top = counts(countMin[k], countMax[k]) - 1; // The largest count in s
+        final int above = countWords[k] + (top + 1) / Long.SIZE; // The word of the count top + 1
+        final long[] words = counts.words;
+
+        // The shift carries into the word after the last one with counts
+        final int end = Math.min(counts.high[k] + 1, to);
+        int highest = -1;
+        int first = -1;
+        int last = -1;
+        long carry = 0;
+        for (int w = counts.low[k]; w < end; w++) {
+            final long word = words[w];
+            if (word != 0) {
+                highest = (w - countWords[k]) * Long.SIZE + Long.SIZE - 1 - Long.numberOfLeadingZeros(word);
+            }
+            long shifted = word << 1 | carry;
+            if (w == above) {
+                shifted &= ~(1L << top + 1);
+            }
+            carry = word >>> (Long.SIZE - 1);
+            words[w] = shifted;
+            if (shifted != 0) {
+                first = first == -1 ? w : first;
+                last = w;
+            }
+        }
+
+        // Without an upper bound the count top stays
+        if (countMax[k] == RegexParser.UNBOUNDED && highest == top) {
+            final int w = countWords[k] + top / Long.SIZE;
+            words[w] |= 1L << top;
+            first = first == -1 ? w : first;
+            last = Math.max(last, w);
+        }
+        if (first != -1) {
+            next.add(s);
+            nextCounts.add(k, first, last, words);
+        }
+        Arrays.fill(words, counts.low[k], end, 0);
+        counts.high[k] = counts.low[k];
+
+        if (highest >= countMin[k] - 1) {
+            addClosure(next, countExit[k], nextCounts);
+        }
+    }
+
+    // Check if the state has a symbol transition on c
+    boolean hasTransition(int state, char c) {
+        return next[state] != NONE && CharClass.contains(ranges, rangeStart[state], rangeStart[state + 1], c);
+    }
+
+    boolean isAccepting(SparseSet set) {
+        return accept != NONE && set.contains(accept);
+    }
+}
@@ -0,0 +1,340 @@
+import java.util.*;
+
+public class DFA {
+    /*
+     * A minimal DFA built ahead of time from a compiled NFA
+     * The NFA is determinized with subset construction,
+     * and the result is minimized with Hopcroft's algorithm.
+     *
+     * The transitions form one dense table with a row per state
+     * and a column per class of the alphabet of the NFA, where
+     * class 0 holds every char outside the pattern. State 0 is the dead state,
+     * whose row points back to itself, so matching is a plain
+     * table walk without any checks.
+     *
+     * A DFA is immutable and can be shared between threads.
+     */
+    public static final int DEFAULT_MAX_STATES = 10000;
+
+    static final int DEAD = 0;
+
+    private final Alphabet alphabet; // Maps chars to columns
+    private final int stateCount;
+    private final int width; // The number of columns in a row
+    private final int start;
+    private final int[] table; // The transitions, indexed by state * width + column
+    private final boolean[] accepting;
+
+    private DFA(Alphabet alphabet, int start, int[] table, boolean[] accepting) {
+        this.alphabet = alphabet;
+        this.stateCount = accepting.length;
+        this.width = alphabet.classCount();
+        this.start = start;
+        this.table = table;
+        this.accepting = accepting;
+    }
+
+    // Build the minimal DFA, refusing to build more than DEFAULT_MAX_STATES states
+    public static DFA build(CompiledNFA program) throws IllegalArgumentException {
+        return build(program, DEFAULT_MAX_STATES);
+    }
+
+    // Build the minimal DFA, refusing to build more than maxStates states
+    public static DFA build(CompiledNFA program, int maxStates) throws IllegalArgumentException {
+        return determinize(program.withoutCounters(), maxStates).minimize();
+    }
+
+    // Number of states including the dead state
+    public int stateCount() {
+        return stateCount;
+    }
+
+    // The start state
+    int start() {
+        return start;
+    }
+
+    // Number of columns in a row, column 0 is for chars outside the pattern
+    int width() {
+        return width;
+    }
+
+    Alphabet alphabet() {
+        return alphabet;
+    }
+
+    // The target of the transition from the state in the column
+    int target(int state, int column) {
+        return table[state * width + column];
+    }
+
+    boolean isAccepting(int state) {
+        return accepting[state];
+    }
+
+    // Check if the whole input matches the regular expression
+    public boolean matches(CharSequence input) {
+        int state = start;
+        for (int i = 0; i < input.length(); i++) {
+            state = table[state * width + alphabet.classOf(input.charAt(i))];
+        }
+
+        return accepting[state];
+    }
+
+    // Subset construction
+    private static DFA determinize(CompiledNFA program, int maxStates) {
+        final int width = program.alphabet.classCount();
+        Map<StateKey, Integer> ids = new HashMap<>();
+        List<int[]> sets = new ArrayList<>();
+        SparseSet current = new SparseSet(program.stateCount());
+        SparseSet next = new SparseSet(program.stateCount());
+
+        // The dead state is the empty set of NFA states
+        ids.put(new StateKey(new int[0]), DEAD);
+        sets.add(new int[0]);
+
+        program.loadStart(current);
+        final int start = addSet(current, ids, sets, maxStates);
+
+        int[] table = new int[16 * width];
+        for (int state = 0; state < sets.size(); state++) {
+            if ((state + 1) * width > table.length) {
+                table = Arrays.copyOf(table, table.length * 2);
+            }
+
+            // Column 0 and every column of the dead state lead to the dead state
+            table[state * width] = DEAD;
+            for (int column = 1; column < width; column++) {
+                final int[] source = sets.get(state);
+                current.clear();
+                current.addAll(source, 0, source.length);
+                program.step(current, program.alphabet.representative(column), next);
+                table[state * width + column] = addSet(next, ids, sets, maxStates);
+            }
+        }
+
+        boolean[] accepting = new boolean[sets.size()];
+        for (int state = 0; state < sets.size(); state++) {
+            accepting[state] = program.accept != CompiledNFA.NONE
+                    && Arrays.binarySearch(sets.get(state), program.accept) >= 0;
+        }
+
+        return new DFA(program.alphabet, start, Arrays.copyOf(table, sets.size() * width), accepting);
+    }
+
+    // Look up the DFA state of a set of NFA states, adding it if it is new
+    private static int addSet(SparseSet set, Map<StateKey, Integer> ids, List<int[]> sets, int maxStates) {
+        int[] sorted = new int[set.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = set.get(i);
+        }
+        Arrays.sort(sorted);
+
+        final StateKey key = new StateKey(sorted);
+        Integer id = ids.get(key);
+        if (id != null) {
+            return id;
+        }
+
+        if (sets.size() >= maxStates) {
+            throw new IllegalArgumentException("DFA exceeds " + maxStates + " states");
+        }
+        ids.put(key, sets.size());
+        sets.add(sorted);
+        return sets.size() - 1;
+    }
+
+    // Hopcroft's partition refinement
+    private DFA minimize() {
+        final int n = stateCount;
+
+        // Incoming transitions, the sources of target t in column c are
+        // sources[inStart[c * n + t]] ... sources[inStart[c * n + t + 1] - 1]
+        int[] inStart = new int[width * n + 1];
+        for (int s = 0; s < n; s++) {
+            for (int c = 0; c < width; c++) {
+                inStart[c * n + table[s * width + c] + 1]++;
+            }
+        }
+        for (int i = 0; i < width * n; i++) {
+            inStart[i + 1] += inStart[i];
+        }
+        int[] sources = new int[width * n];
+        int[] fill = Arrays.copyOf(inStart, width * n);
+        for (int s = 0; s < n; s++) {
+            for (int c = 0; c < width; c++) {
+                sources[fill[c * n + table[s * width + c]]++] = s;
+            }
+        }
+
+        Partition partition = new Partition(n, accepting);
+
+        // Every block and column pair that still has to be used as a splitter
+        Deque<int[]> work = new ArrayDeque<>();
+        boolean[] waiting = new boolean[n * width];
+        final int smaller = partition.blockCount() == 2 && partition.size(1) < partition.size(0) ? 1 : 0;
+        for (int c = 0; c < width; c++) {
+            work.add(new int[] { smaller, c });
+            waiting[smaller * width + c] = true;
+        }
+
+        List<Integer> touched = new ArrayList<>();
+        while (!work.isEmpty()) {
+            int[] splitter = work.poll();
+            final int block = splitter[0];
+            final int column = splitter[1];
+            waiting[block * width + column] = false;
+
+            // Mark every state with a transition into the splitter block
+            int[] members = partition.members(block);
+            for (int target : members) {
+                for (int i = inStart[column * n + target]; i < inStart[column * n + target + 1]; i++) {
+                    partition.mark(sources[i], touched);
+                }
+            }
+
+            for (int old : touched) {
+                final int split = partition.split(old);
+                if (split == -1) {
+                    continue;
+                }
+
+                for (int c = 0; c < width; c++) {
+                    if (waiting[old * width + c]) {
+                        work.add(new int[] { split, c });
+                        waiting[split * width + c] = true;
+                    } else {
+                        final int add = partition.size(split) < partition.size(old) ? split : old;
+                        work.add(new int[] { add, c });
+                        waiting[add * width + c] = true;
+                    }
+                }
+            }
+            touched.clear();
+        }
+
+        // Number the blocks so that the block of the dead state is 0
+        final int blocks = partition.blockCount();
+        int[] ids = new int[blocks];
+        Arrays.fill(ids, -1);
+        ids[partition.blockOf(DEAD)] = DEAD;
+        int count = 1;
+        for (int b = 0; b < blocks; b++) {
+            if (ids[b] == -1) {
+                ids[b] = count++;
+            }
+        }
+
+        int[] minTable = new int[blocks * width];
+        boolean[] minAccepting = new boolean[blocks];
+        for (int s = 0; s < n; s++) {
+            final int id = ids[partition.blockOf(s)];
+            minAccepting[id] = accepting[s];
+            for (int c = 0; c < width; c++) {
+                minTable[id * width + c] = ids[partition.blockOf(table[s * width + c])];
+            }
+        }
+
+        return new DFA(alphabet, ids[partition.blockOf(start)], minTable, minAccepting);
+    }
+
+    // A partition of the states into blocks that can be refined in place
+    private static final class Partition {
+        private final int[] elements; // The states, grouped by block
+        private final int[] location; // The index of each state in elements
+        private final int[] blockOf;
+        private final int[] first; // The range of block b is elements[first[b]] ... elements[end[b] - 1]
+        private final int[] end;
+        private final int[] marked; // The marked states of block b are elements[first[b]] ... elements[marked[b] - 1]
+        private int blockCount;
+
+        // Start with the non-accepting and the accepting states
+        Partition(int n, boolean[] accepting) {
+            elements = new int[n];
+            location = new int[n];
+            blockOf = new int[n];
+            first = new int[n];
+            end = new int[n];
+            marked = new int[n];
+
+            int size = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                final boolean accept = pass == 1;
+                final int begin = size;
+                for (int s = 0; s < n; s++) {
+                    if (accepting[s] == accept) {
+                        elements[size] = s;
+                        location[s] = size;
+                        blockOf[s] = blockCount;
+                        size++;
+                    }
+                }
+
+                if (size > begin) {
+                    first[blockCount] = begin;
+                    end[blockCount] = size;
+                    marked[blockCount] = begin;
+                    blockCount++;
+                }
+            }
+        }
+
+        int blockCount() {
+            return blockCount;
+        }
+
+        int blockOf(int state) {
+            return blockOf[state];
+        }
+
+        int size(int block) {
+            return end[block] - first[block];
+        }
+
+        int[] members(int block) {
+            return Arrays.copyOfRange(elements, first[block], end[block]);
+        }
+
+        // Move the state to the marked part of its block
+        void mark(int state, List<Integer> touched) {
+            final int block = blockOf[state];
+            final int index = location[state];
+            if (index < marked[block]) {
+                return;
+            }
+
+            if (marked[block] == first[block]) {
+                touched.add(block);
+            }
+
+            final int swap = elements[marked[block]];
+            elements[index] = swap;
+            location[swap] = index;
+            elements[marked[block]] = state;
+            location[state] = marked[block];
+            marked[block]++;
+        }
+
+        // Split off the marked states as a new block
+        // Returns the new block, or -1 if every state or no state was marked
+        int split(int block) {
+            if (marked[block] == end[block]) {
+                marked[block] = first[block];
+                return -1;
+            }
+
+            final int added = blockCount++;
+            first[added] = first[block];
+            end[added] = marked[block];
+            marked[added] = first[added];
+            for (int i = first[added]; i < end[added]; i++) {
+                blockOf[elements[i]] = added;
+            }
+
+            first[block] = end[added];
+            marked[block] = first[block];
+            return added;
+        }
+    }
+}
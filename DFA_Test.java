@@ -0,0 +1,59 @@
+import org.junit.*;
+
+public class DFA_Test {
+    private static final String[] PATTERNS = {
+            "", "abc", "a*", "ab+c", "(a+|b)(a*|c)", "(ab|a)(bc|c)*", "((a|b)*c)+d", "x(y|z)*x",
+            "[a-c]*d", "x[^x]*x", ".b.", "(a|b){2,4}c?", "x[a-z]{2,}", "(a{2,3}|b)*c?", "[a-c]{2,4}d?",
+    };
+
+    private static final String[] INPUTS = {
+            "", "a", "b", "c", "abc", "abbc", "aaa", "ba", "aaac", "abcc", "abcbc", "abbcbc",
+            "cd", "abcd", "ccacbd", "xx", "xyzzyx", "xyzq", "d", "q",
+    };
+
+    private static CompiledNFA compile(String regEx) {
+        return NFA.buildAutomaton(RegexParser.parse(regEx)).getProgram();
+    }
+
+    private static boolean expected(String regEx, String input) {
+        NFA nfa = NFA.buildAutomaton(RegexParser.parse(regEx));
+        nfa.initialize();
+        return nfa.match(input);
+    }
+
+    @Test
+    public void sameResultsAsNFA() {
+        for (String regEx : PATTERNS) {
+            DFA dfa = DFA.build(compile(regEx));
+            for (String input : INPUTS) {
+                Assert.assertEquals(regEx + " on " + input, expected(regEx, input), dfa.matches(input));
+            }
+        }
+    }
+
+    @Test
+    public void minimalStateCount() {
+        // The counts include the dead state
+        Assert.assertEquals(2, DFA.build(compile("")).stateCount());
+        Assert.assertEquals(2, DFA.build(compile("a*")).stateCount());
+        Assert.assertEquals(2, DFA.build(compile("(a|b)*")).stateCount());
+        Assert.assertEquals(2, DFA.build(compile("(a*b*)*")).stateCount());
+        Assert.assertEquals(5, DFA.build(compile("abc")).stateCount());
+        Assert.assertEquals(3, DFA.build(compile("a+|aa*")).stateCount());
+        Assert.assertEquals(4, DFA.build(compile("(ab|ac)(b|c)*")).stateCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refuseAboveLimit() {
+        // Remembering the last five symbols takes at least 32 states
+        DFA.build(compile("(a|b)*a(a|b)(a|b)(a|b)(a|b)"), 10);
+    }
+
+    @Test
+    public void buildWithinLimit() {
+        DFA dfa = DFA.build(compile("(a|b)*a(a|b)(a|b)(a|b)(a|b)"), 1000);
+        Assert.assertEquals(33, dfa.stateCount());
+        Assert.assertEquals(true, dfa.matches("bbbabbbb"));
+        Assert.assertEquals(false, dfa.matches("bbbbabbb"));
+    }
+}
@@ -0,0 +1,204 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class FileScanner {
+    /*
+     * Match every line of a file against a pattern in parallel
+     * The file is split into chunks that end at a line break,
+     * and every chunk is memory mapped and scanned by a worker thread.
+     * The lines are matched straight from the mapped bytes,
+     * without copying them into Strings, and their ends are found
+     * eight bytes or a vector at a time by ByteScanner.
+     *
+     * The file is read as UTF-8 and matched without decoding,
+     * and a trailing '\r' is not part of the line.
+     * Lines without the required literals of the pattern are
+     * rejected by the prefilter before they reach the matcher.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 8 << 20; // 8 MiB
+
+    private final Pattern pattern;
+    private final int threads;
+    private final int chunkSize;
+
+    public FileScanner(Pattern pattern) {
+        this(pattern, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public FileScanner(Pattern pattern, int threads, int chunkSize) {
+        if (threads <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("Threads and chunk size must be positive");
+        }
+
+        this.pattern = pattern;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    // Count the lines that match the pattern
+    public long count(Path file) throws IOException {
+        long count = 0;
+        for (Chunk chunk : scan(file, false)) {
+            count += chunk.count;
+        }
+        return count;
+    }
+
+    // Find the byte offsets of the lines that match the pattern, in ascending order
+    public long[] matchingLines(Path file) throws IOException {
+        List<Chunk> chunks = scan(file, true);
+        long count = 0;
+        for (Chunk chunk : chunks) {
+            count += chunk.count;
+        }
+
+        long[] offsets = new long[(int) count];
+        int size = 0;
+        for (Chunk chunk : chunks) {
+            System.arraycopy(chunk.offsets, 0, offsets, size, chunk.count);
+            size += chunk.count;
+        }
+        return offsets;
+    }
+
+    // Scan every chunk on the worker threads, the chunks are returned in file order
+    private List<Chunk> scan(Path file, boolean collect) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<Chunk> chunks = split(channel);
+            // Small files are not worth a thread pool
+            if (chunks.size() <= 1) {
+                for (Chunk chunk : chunks) {
+                    chunk.scan(channel, pattern.prefilter(), pattern.utf8Matcher(), collect);
+                }
+                return chunks;
+            }
+
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, chunks.size()));
+            try {
+                // One matcher per worker thread
+                ThreadLocal<Matcher> matchers = ThreadLocal.withInitial(pattern::utf8Matcher);
+                List<Future<?>> results = new ArrayList<>();
+                for (Chunk chunk : chunks) {
+                    results.add(pool.submit(() -> {
+                        chunk.scan(channel, pattern.prefilter(), matchers.get(), collect);
+                        return null;
+                    }));
+                }
+
+                for (Future<?> result : results) {
+                    result.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while scanning " + file);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Failed to scan " + file, e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+
+            return chunks;
+        }
+    }
+
+    // Split the file into chunks of about chunkSize bytes that end after a line break
+    private List<Chunk> split(FileChannel channel) throws IOException {
+        final long size = channel.size();
+        List<Chunk> chunks = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(start + chunkSize, size);
+
+            // Move the end past the next line break
+            // A single line must fit into one mapping
+            while (end < size) {
+                buffer.clear();
+                final int read = channel.read(buffer, end);
+                if (read <= 0) {
+                    end = size;
+                    break;
+                }
+
+                int newline = -1;
+                for (int i = 0; i < read && newline == -1; i++) {
+                    if (buffer.get(i) == '\n') {
+                        newline = i;
+                    }
+                }
+
+                if (newline != -1) {
+                    end += newline + 1;
+                    break;
+                }
+                end += read;
+            }
+
+            if (end - start > Integer.MAX_VALUE) {
+                throw new IOException("Line longer than " + Integer.MAX_VALUE + " bytes");
+            }
+            chunks.add(new Chunk(start, end));
+            start = end;
+        }
+
+        return chunks;
+    }
+
+    // A range of whole lines
+    private static final class Chunk {
+        private final long start;
+        private final long end;
+        private int count;
+        private long[] offsets;
+
+        Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+            count = 0;
+            offsets = new long[0];
+        }
+
+        void scan(FileChannel channel, Prefilter prefilter, Matcher matcher, boolean collect) throws IOException {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            final int length = buffer.limit();
+
+            int line = 0;
+            while (line < length) {
+                final int newline = ByteScanner.indexOf(buffer, line, length, (byte) '\n');
+                final int i = newline == -1 ? length : newline;
+                final int lineEnd = i > line && buffer.get(i - 1) == '\r' ? i - 1 : i;
+                if (prefilter.rejectsUtf8(buffer, line, lineEnd)) {
+                    line = i + 1;
+                    continue;
+                }
+
+                // Match the line until it ends or the matcher is dead
+                matcher.reset();
+
+                for (int j = line; j < lineEnd && !matcher.isDead(); j++) {
+                    matcher.step((char) (buffer.get(j) & 0xff));
+                }
+
+                if (matcher.isAcceptable()) {
+                    if (collect) {
+                        if (count == offsets.length) {
+                            offsets = Arrays.copyOf(offsets, Math.max(16, count * 2));
+                        }
+                        offsets[count] = start + line;
+                    }
+                    count++;
+                }
+
+                line = i + 1;
+            }
+        }
+    }
+}
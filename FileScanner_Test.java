@@ -0,0 +1,84 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.*;
+
+public class FileScanner_Test {
+    private Path file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("FileScanner_Test", ".log");
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private void write(String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void matchesWholeLines() throws IOException {
+        write("error 1\nwarn 2\r\nerror 22\nerror\n\nerror 3");
+        FileScanner scanner = new FileScanner(Pattern.compile("error (1|2|3)+"));
+
+        Assert.assertEquals(3, scanner.count(file));
+        Assert.assertArrayEquals(new long[] { 0, 16, 32 }, scanner.matchingLines(file));
+    }
+
+    @Test
+    public void supplementaryChars() throws IOException {
+        Files.write(file, "x\uD83D\uDE00y\nxy\n\uD83E\uDD14\nx\uD83D\uDE00\uD83D\uDE00y\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertArrayEquals(new long[] { 0 }, new FileScanner(Pattern.compile("x\uD83D\uDE00y")).matchingLines(file));
+        Assert.assertEquals(2, new FileScanner(Pattern.compile("x(\uD83D\uDE00)+y")).count(file));
+        Assert.assertEquals(4, new FileScanner(Pattern.compile(".*")).count(file));
+        Assert.assertEquals(4, new FileScanner(Pattern.compile("\\S+")).count(file));
+        // Like Pattern.matches(), a dot matches one char of a String, and a surrogate pair is two
+        Assert.assertArrayEquals(new long[] { 0 }, new FileScanner(Pattern.compile("x..y")).matchingLines(file));
+    }
+
+    @Test
+    public void emptyLinesAndFile() throws IOException {
+        write("");
+        Assert.assertEquals(0, new FileScanner(Pattern.compile("")).count(file));
+
+        write("\n\na\n");
+        Assert.assertArrayEquals(new long[] { 0, 1 }, new FileScanner(Pattern.compile("")).matchingLines(file));
+    }
+
+    @Test
+    public void manyChunks() throws IOException {
+        StringBuilder content = new StringBuilder();
+        List<Long> expected = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            String line = random.nextInt(3) == 0 ? "ab".repeat(random.nextInt(20)) + "c" : "ab".repeat(i % 7) + "x";
+            if (line.endsWith("c")) {
+                expected.add((long) content.length());
+            }
+            content.append(line).append('\n');
+        }
+        write(content.toString());
+
+        // Chunks much smaller than the file, and single lines longer than a chunk
+        FileScanner scanner = new FileScanner(Pattern.compile("(ab)*c"), 4, 16);
+        long[] offsets = scanner.matchingLines(file);
+        Assert.assertEquals(expected.size(), offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            Assert.assertEquals((long) expected.get(i), offsets[i]);
+        }
+        Assert.assertEquals(expected.size(), scanner.count(file));
+    }
+
+    @Test
+    public void utf8Lines() throws IOException {
+        Files.write(file, "größe\nGröße\ngrösse\n€ 5\n".getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertArrayEquals(new long[] { 0, 8, 16 }, new FileScanner(Pattern.compile("(g|G)rö(ß|ss)e")).matchingLines(file));
+        Assert.assertEquals(1, new FileScanner(Pattern.compile("€ (1|5)")).count(file));
+    }
+}
@@ -0,0 +1,303 @@
+import java.util.*;
+
+public final class GlushkovBuilder {
+    /*
+     * The position automaton of a regular expression, without epsilon transitions
+     * Every char or class in the syntax tree is a position, and the program has
+     * one state per position, plus a start state and an accept state.
+     * The state of a position carries the symbol transition on its chars,
+     * and taking it adds the follow set of the position to the next states,
+     * so the closures of the program are the follow sets themselves.
+     * The start state has the first set as its closure, and the accept state
+     * is in the follow set of every last position.
+     *
+     * For every subtree the builder computes whether it matches the empty string,
+     * its first set, the positions that can start a match of it, and its last set,
+     * the positions that can end one. Concatenations and repetitions then
+     * add first sets to the follow sets of last positions.
+     *
+     * A counted repetition is expanded into copies of its operand like
+     * NFA.repeat() does, and the tree is walked with an explicit stack.
+     */
+    private GlushkovBuilder() {
+    }
+
+    public static CompiledNFA build(String regEx) throws IllegalArgumentException {
+        return build(RegexSimplifier.simplify(RegexParser.parseTree(regEx)));
+    }
+
+    public static CompiledNFA build(RegexNode root) throws IllegalArgumentException {
+        positionCount(root);
+
+        List<char[]> classes = new ArrayList<>(); // The chars of position p are classes.get(p - 1)
+        List<IntList> follow = new ArrayList<>();
+        classes.add(null);
+        follow.add(null);
+
+        // Every frame is a node and the facts of its children so far
+        Deque<RegexNode> nodes = new ArrayDeque<>();
+        Deque<List<Facts>> done = new ArrayDeque<>();
+        nodes.push(expand(root));
+        done.push(new ArrayList<>());
+
+        Facts result = null;
+        while (!nodes.isEmpty()) {
+            RegexNode node = nodes.peek();
+            List<Facts> children = done.peek();
+            if (children.size() < node.children().size()) {
+                nodes.push(expand(node.children().get(children.size())));
+                done.push(new ArrayList<>());
+                continue;
+            }
+
+            nodes.pop();
+            done.pop();
+            result = factsOf(node, children, classes, follow);
+            if (!done.isEmpty()) {
+                done.peek().add(result);
+            }
+        }
+
+        return program(result, classes, follow);
+    }
+
+    // The number of positions of the tree, with every copy of a counted repetition
+    // Refuses counted repetitions with too many positions, like NFA.repeat() refuses too many states
+    static long positionCount(RegexNode root) throws IllegalArgumentException {
+        Deque<RegexNode> nodes = new ArrayDeque<>();
+        Deque<long[]> sizes = new ArrayDeque<>(); // The positions of the children so far
+        nodes.push(root);
+        sizes.push(new long[2]);
+        long size = 0;
+        while (!nodes.isEmpty()) {
+            RegexNode node = nodes.peek();
+            long[] children = sizes.peek();
+            if (children[0] < node.children().size()) {
+                nodes.push(node.children().get((int) children[0]));
+                sizes.push(new long[2]);
+                continue;
+            }
+
+            nodes.pop();
+            sizes.pop();
+            size = node.kind() == RegexNode.Kind.CHARS ? 1 : children[1];
+            if (node.kind() == RegexNode.Kind.REPEAT) {
+                final long copies = node.max() == RegexParser.UNBOUNDED ? Math.max(node.min(), 1) : node.max();
+                if (copies * size > NFA.MAX_REPEAT_STATES) {
+                    throw new IllegalArgumentException("Repetition exceeds " + NFA.MAX_REPEAT_STATES + " states");
+                }
+                size *= copies;
+            }
+            if (!sizes.isEmpty()) {
+                sizes.peek()[0]++;
+                sizes.peek()[1] += size;
+            }
+        }
+        return size;
+    }
+
+    /*
+     * A counted repetition as copies of its operand
+     * The copies are the same subtree, but the walk visits every one of them,
+     * so each gets its own positions. Only "{0,1}" stays, as an optional node.
+     */
+    private static RegexNode expand(RegexNode node) {
+        if (node.kind() != RegexNode.Kind.REPEAT || (node.min() == 0 && node.max() == 1)) {
+            return node;
+        }
+
+        final RegexNode operand = node.children().get(0);
+        final int min = node.min();
+        final int max = node.max();
+        List<RegexNode> parts = new ArrayList<>();
+        if (max == RegexParser.UNBOUNDED) {
+            for (int i = 0; i < min - 1; i++) {
+                parts.add(operand);
+            }
+            parts.add(min == 0 ? RegexNode.star(operand) : RegexNode.plus(operand));
+            return RegexNode.concat(parts, node.position());
+        }
+
+        // The optional copies are nested, x{1,3} is x(x(x)?)?
+        RegexNode optional = null;
+        for (int i = min; i < max; i++) {
+            optional = RegexNode.repeat(optional == null ? operand
+                    : RegexNode.concat(Arrays.asList(operand, optional), node.position()), 0, 1);
+        }
+        for (int i = 0; i < min; i++) {
+            parts.add(operand);
+        }
+        if (optional != null) {
+            parts.add(optional);
+        }
+        return RegexNode.concat(parts, node.position());
+    }
+
+    // The facts of the node from the facts of its children
+    private static Facts factsOf(RegexNode node, List<Facts> children, List<char[]> classes, List<IntList> follow) {
+        switch (node.kind()) {
+        case EMPTY:
+            return new Facts(true, new IntList(), new IntList());
+        case CHARS: {
+            final int position = classes.size();
+            classes.add(node.ranges());
+            follow.add(new IntList());
+            return new Facts(false, IntList.of(position), IntList.of(position));
+        }
+        case CONCAT: {
+            Facts facts = children.get(0);
+            for (int i = 1; i < children.size(); i++) {
+                final Facts next = children.get(i);
+                for (int j = 0; j < facts.last.size(); j++) {
+                    follow.get(facts.last.get(j)).addAll(next.first);
+                }
+
+                IntList first = facts.first;
+                if (facts.nullable) {
+                    first.addAll(next.first);
+                }
+                IntList last = next.last;
+                if (next.nullable) {
+                    last.addAll(facts.last);
+                }
+                facts = new Facts(facts.nullable && next.nullable, first, last);
+            }
+            return facts;
+        }
+        case UNION: {
+            Facts facts = new Facts(false, new IntList(), new IntList());
+            for (Facts child : children) {
+                facts.first.addAll(child.first);
+                facts.last.addAll(child.last);
+                facts.nullable |= child.nullable;
+            }
+            return facts;
+        }
+        case STAR:
+        case PLUS: {
+            final Facts child = children.get(0);
+            for (int j = 0; j < child.last.size(); j++) {
+                follow.get(child.last.get(j)).addAll(child.first);
+            }
+            return new Facts(node.kind() == RegexNode.Kind.STAR || child.nullable, child.first, child.last);
+        }
+        default: // "{0,1}", the only repetition that expand() keeps
+            final Facts child = children.get(0);
+            return new Facts(true, child.first, child.last);
+        }
+    }
+
+    // State 0 is the start state, state p is position p, and the last state accepts
+    private static CompiledNFA program(Facts root, List<char[]> classes, List<IntList> follow) {
+        final int n = classes.size() + 1;
+        final int accept = n - 1;
+
+        int[] next = new int[n];
+        Arrays.fill(next, CompiledNFA.NONE);
+        int[] acceptId = new int[n];
+        Arrays.fill(acceptId, CompiledNFA.NONE);
+        acceptId[accept] = 0;
+
+        int[] rangeStart = new int[n + 1];
+        int rangeCount = 0;
+        for (int p = 1; p < accept; p++) {
+            rangeStart[p] = rangeCount;
+            rangeCount += classes.get(p).length / 2;
+            next[p] = p;
+        }
+        rangeStart[accept] = rangeCount;
+        rangeStart[n] = rangeCount;
+        char[] ranges = new char[2 * rangeCount];
+        for (int p = 1; p < accept; p++) {
+            System.arraycopy(classes.get(p), 0, ranges, 2 * rangeStart[p], classes.get(p).length);
+        }
+
+        // The last positions are followed by the end of the input
+        for (int i = 0; i < root.last.size(); i++) {
+            follow.get(root.last.get(i)).add(accept);
+        }
+        IntList start = root.first;
+        if (root.nullable) {
+            start.add(accept);
+        }
+        follow.set(0, start);
+
+        // The closures are the follow sets, without the duplicates of nested repetitions
+        int[] closureStart = new int[n + 1];
+        IntList closureStates = new IntList();
+        for (int s = 0; s < accept; s++) {
+            closureStart[s] = closureStates.size();
+            final int[] targets = follow.get(s).toSortedSet();
+            for (int target : targets) {
+                closureStates.add(target);
+            }
+        }
+        closureStart[accept] = closureStates.size();
+        closureStates.add(accept);
+        closureStart[n] = closureStates.size();
+
+        return new CompiledNFA(0, acceptId, 1, rangeStart, ranges, next, closureStart, closureStates.toArray());
+    }
+
+    // Whether a subtree matches the empty string, and its first and last positions
+    private static final class Facts {
+        boolean nullable;
+        final IntList first;
+        final IntList last;
+
+        Facts(boolean nullable, IntList first, IntList last) {
+            this.nullable = nullable;
+            this.first = first;
+            this.last = last;
+        }
+    }
+
+    // A growable list of ints
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        static IntList of(int value) {
+            IntList list = new IntList();
+            list.add(value);
+            return list;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int i) {
+            return values[i];
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(IntList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        int[] toSortedSet() {
+            int[] sorted = toArray();
+            Arrays.sort(sorted);
+            int count = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (count == 0 || sorted[count - 1] != sorted[i]) {
+                    sorted[count++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, count);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import org.junit.*;
+
+public class GlushkovBuilder_Test {
+    private static final String[] PATTERNS = { "", "abc", "(a+|b)(a*|c)", "(ab|a)(bc|c)*", "(a*b*)*c",
+            "x(a|b){2,4}y", "(ab){2,}", "[a-c]+\\d{0,2}", "(a|é)*€", };
+
+    private static String randomInput(Random random) {
+        StringBuilder input = new StringBuilder();
+        final int length = random.nextInt(9);
+        for (int i = 0; i < length; i++) {
+            input.append("abcxy1é€".charAt(random.nextInt(8)));
+        }
+        return input.toString();
+    }
+
+    @Test
+    public void oneStatePerPosition() {
+        // The positions, the start state and the accept state
+        Assert.assertEquals(5, GlushkovBuilder.build("abc").stateCount());
+        Assert.assertEquals(6, GlushkovBuilder.build("(a+|b)(a*|c)").stateCount());
+        Assert.assertEquals(2, GlushkovBuilder.build("").stateCount());
+        Assert.assertEquals(2 + 4 * 2, GlushkovBuilder.build("(ab){4}").stateCount());
+    }
+
+    @Test
+    public void sameResultsAsThompson() {
+        Random random = new Random(42);
+        for (String regEx : PATTERNS) {
+            Pattern thompson = Pattern.compile(regEx);
+            Pattern glushkov = Pattern.compile(regEx, Pattern.GLUSHKOV);
+            Assert.assertEquals(DFA.build(thompson.program()).stateCount(), DFA.build(glushkov.program()).stateCount());
+
+            for (int i = 0; i < 300; i++) {
+                final String input = randomInput(random);
+                Assert.assertEquals(regEx + " on " + input, thompson.matches(input), glushkov.matches(input));
+
+                byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+                Assert.assertEquals(regEx + " on UTF-8 " + input, thompson.matches(input),
+                        glushkov.matchesUtf8(bytes, 0, bytes.length));
+
+                List<Match> expected = new ArrayList<>();
+                thompson.findAll(input).forEach(expected::add);
+                List<Match> actual = new ArrayList<>();
+                glushkov.findAll(input).forEach(actual::add);
+                Assert.assertEquals(regEx + " in " + input, expected, actual);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void repetitionTooLarge() {
+        GlushkovBuilder.build("(a{1000}){1000}");
+    }
+}
@@ -0,0 +1,153 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+public class JavaSourceGenerator {
+    /*
+     * Compile regular expressions to plain Java source at build time
+     * Every pattern becomes one class with the transition table of its
+     * minimal DFA as a constant and a static matches(CharSequence) method.
+     * The generated classes do not depend on this project, and using one
+     * costs a class load instead of parsing and building the automaton.
+     *
+     * Usage: java JavaSourceGenerator <patterns file> <output directory> [package]
+     * Every line of the patterns file is a class name, a space and a regular expression.
+     */
+    private static final int CHUNK_LENGTH = 8192; // Chars per string constant, far below the class file limit
+
+    // Write the source of a matcher class for the regular expression
+    public static String generate(String className, String packageName, String regEx)
+            throws IllegalArgumentException {
+        if (!isIdentifier(className)) {
+            throw new IllegalArgumentException("Invalid class name: " + className);
+        }
+
+        DFA dfa = DFA.build(NFA.buildAutomaton(RegexParser.parse(regEx)).getProgram());
+        if (dfa.stateCount() > Character.MAX_VALUE) {
+            throw new IllegalArgumentException("DFA with " + dfa.stateCount() + " states is too big to generate");
+        }
+
+        // The class of a char is looked up in two levels, its high byte selects a page of classes
+        final int width = dfa.width();
+        int[] pageOffsets = dfa.alphabet().pages();
+        char[] pages = new char[pageOffsets.length];
+        for (int page = 0; page < pages.length; page++) {
+            pages[page] = (char) (pageOffsets[page] / 256);
+        }
+        char[] classes = dfa.alphabet().classes();
+
+        char[] table = new char[dfa.stateCount() * width];
+        char[] accepting = new char[dfa.stateCount()];
+        for (int state = 0; state < dfa.stateCount(); state++) {
+            for (int column = 0; column < width; column++) {
+                table[state * width + column] = (char) dfa.target(state, column);
+            }
+            accepting[state] = dfa.isAccepting(state) ? '1' : '0';
+        }
+
+        StringBuilder out = new StringBuilder();
+        if (packageName != null) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("// Generated by JavaSourceGenerator, do not edit\n");
+        out.append("// Regular expression: ").append(escape(regEx)).append("\n");
+        out.append("public final class ").append(className).append(" {\n");
+        out.append("    private static final int START = ").append(dfa.start()).append(";\n");
+        out.append("    private static final int WIDTH = ").append(width).append(";\n");
+        out.append("\n");
+        out.append("    // The column of char c is CLASSES[PAGES[c >>> 8] * 256 + (c & 0xff)]\n");
+        appendConstant(out, "PAGES", pages);
+        appendConstant(out, "CLASSES", classes);
+        out.append("    // The transitions, indexed by state * WIDTH + column, state 0 is dead\n");
+        appendConstant(out, "TABLE", table);
+        appendConstant(out, "ACCEPTING", accepting);
+        out.append("\n");
+        out.append("    private ").append(className).append("() {\n");
+        out.append("    }\n");
+        out.append("\n");
+        out.append("    // Check if the whole input matches the regular expression\n");
+        out.append("    public static boolean matches(CharSequence input) {\n");
+        out.append("        int state = START;\n");
+        out.append("        for (int i = 0; i < input.length(); i++) {\n");
+        out.append("            final char c = input.charAt(i);\n");
+        out.append("            final int column = CLASSES[PAGES[c >>> 8] * 256 + (c & 0xff)];\n");
+        out.append("            state = TABLE[state * WIDTH + column];\n");
+        out.append("        }\n");
+        out.append("\n");
+        out.append("        return ACCEPTING[state] == '1';\n");
+        out.append("    }\n");
+        out.append("}\n");
+        return out.toString();
+    }
+
+    // Declare a char array constant, split into string literals of a bounded length
+    private static void appendConstant(StringBuilder out, String name, char[] value) {
+        out.append("    private static final char[] ").append(name).append(" = String.join(\"\"");
+        for (int from = 0; from < value.length; from += CHUNK_LENGTH) {
+            out.append(",\n            \"");
+            out.append(escape(new String(value, from, Math.min(CHUNK_LENGTH, value.length - from))));
+            out.append("\"");
+        }
+        out.append(").toCharArray();\n");
+    }
+
+    // Escape the chars for a Java string literal or comment
+    // Octal escapes are used below 256, since a unicode escape of a line break
+    // would end the literal before the compiler even sees it.
+    // They always have three digits, so a digit after them is not read as part of them
+    private static String escape(String value) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c >= ' ' && c < 0x7f) {
+                out.append(c);
+            } else if (c < 0x100) {
+                out.append(String.format("\\%03o", (int) c));
+            } else {
+                out.append(String.format("\\u%04x", (int) c));
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean isIdentifier(String name) {
+        if (name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            if (!Character.isJavaIdentifierPart(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java JavaSourceGenerator <patterns file> <output directory> [package]");
+            System.exit(2);
+        }
+
+        final String packageName = args.length > 2 ? args[2] : null;
+        Path output = Paths.get(args[1]);
+        Files.createDirectories(output);
+
+        for (String line : Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            // The regular expression is everything after the first space
+            final int space = line.indexOf(' ');
+            final String className = space == -1 ? line : line.substring(0, space);
+            final String regEx = space == -1 ? "" : line.substring(space + 1);
+
+            String source = generate(className, packageName, regEx);
+            Files.write(output.resolve(className + ".java"), source.getBytes(StandardCharsets.UTF_8));
+            System.out.println(className + ".java");
+        }
+    }
+}
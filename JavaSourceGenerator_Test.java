@@ -0,0 +1,78 @@
+import java.lang.reflect.Method;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import javax.tools.*;
+import org.junit.*;
+
+public class JavaSourceGenerator_Test {
+    private static final String[] INPUTS = {
+            "", "a", "b", "c", "abc", "abbc", "aaa", "ba", "aaac", "abcc", "abcbc", "abbcbc",
+            "\"\\", "\n", "qé", "€€",
+    };
+
+    // Generate, compile and load the matcher class
+    private static Method compileGenerated(Path dir, String className, String regEx) throws Exception {
+        Path source = dir.resolve(className + ".java");
+        Files.write(source, JavaSourceGenerator.generate(className, null, regEx).getBytes(StandardCharsets.UTF_8));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assert.assertEquals(0, compiler.run(null, null, null, "-encoding", "UTF-8", "-d", dir.toString(),
+                source.toString()));
+
+        URLClassLoader loader = new URLClassLoader(new URL[] { dir.toUri().toURL() });
+        return loader.loadClass(className).getMethod("matches", CharSequence.class);
+    }
+
+    @Test
+    public void sameResultsAsNFA() throws Exception {
+        String[] patterns = { "", "abc", "(a+|b)(a*|c)", "(ab|a)(bc|c)*", "\"\\*", "qé|€+", };
+        Path dir = Files.createTempDirectory("JavaSourceGenerator_Test");
+        try {
+            for (int i = 0; i < patterns.length; i++) {
+                Method matches = compileGenerated(dir, "Matcher" + i, patterns[i]);
+                for (String input : INPUTS) {
+                    Assert.assertEquals(patterns[i] + " on " + input, Pattern.compile(patterns[i]).matches(input),
+                            matches.invoke(null, input));
+                }
+            }
+        } finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void manyStates() throws Exception {
+        // More than 56 states and classes, so the tables hold chars whose octal escape is followed by a digit
+        final String digit = "(0|1|2|3|4|5|6|7|8|9)";
+        final String regEx = "a".repeat(60) + "|" + digit + digit + digit;
+        DFA dfa = DFA.build(Pattern.compile(regEx).program());
+        Assert.assertTrue(dfa.stateCount() > 56);
+
+        Path dir = Files.createTempDirectory("JavaSourceGenerator_Test");
+        try {
+            Method matches = compileGenerated(dir, "Big", regEx);
+            for (int i = 0; i <= 62; i++) {
+                for (String input : new String[] { "a".repeat(i), "a".repeat(i) + "1", "12".repeat(i) }) {
+                    Assert.assertEquals(input, dfa.matches(input), matches.invoke(null, input));
+                }
+            }
+        } finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    private static void deleteDirectory(Path dir) throws Exception {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidClassName() {
+        JavaSourceGenerator.generate("1abc", null, "abc");
+    }
+}
@@ -0,0 +1,225 @@
+import java.util.*;
+
+public class LazyDFA {
+    /*
+     * A DFA that is built while matching
+     * Every DFA state stands for a set of NFA states, and a transition
+     * is computed from the NFA only the first time it is taken.
+     * After warm up, every input symbol costs one table lookup.
+     *
+     * The cache of DFA states is bounded by a memory budget.
+     * When the budget is exceeded the cache is cleared and rebuilt.
+     * If the cache keeps being cleared before its states are reused,
+     * the DFA gives up and simulates the NFA instead.
+     *
+     * The cache is mutable, so an instance must not be shared between threads.
+     */
+    public static final long DEFAULT_BUDGET = 1 << 20; // 1 MiB
+
+    private static final int UNKNOWN = -2; // The transition has not been computed yet
+    private static final int DEAD = -1; // No NFA state is left
+
+    // Estimated bytes for the key, the map entry and the object headers of a state
+    private static final int STATE_OVERHEAD = 96;
+
+    // The cache is thrashing if the states are used for fewer symbols on average
+    private static final int MIN_SYMBOLS_PER_STATE = 10;
+
+    private final CompiledNFA program;
+    private final long budget;
+    private final Alphabet alphabet;
+    private final int columnCount; // One column for each class of the alphabet
+
+    private final Map<StateKey, Integer> ids; // Look up a DFA state by its NFA states
+    private final List<int[]> sets; // The NFA states of each DFA state
+    private boolean[] accepting;
+    private int[] table; // The transitions, indexed by state * columnCount + column
+    private long memory; // The estimated size of the cache in bytes
+    private int start;
+
+    // Thrashing detection
+    private long symbolCount; // The number of symbols matched so far
+    private long symbolsAtClear; // symbolCount when the cache was last cleared
+    private int statesSinceClear;
+    private int clears;
+    private boolean fallback;
+    private long misses; // The transitions that were not in the cache
+
+    // Scratch sets for computing transitions and for the NFA fallback
+    private final SparseSet current;
+    private final SparseSet next;
+
+    public LazyDFA(CompiledNFA program) {
+        this(program, DEFAULT_BUDGET);
+    }
+
+    public LazyDFA(CompiledNFA program, long budget) {
+        this.program = program.withoutCounters();
+        this.budget = budget;
+        alphabet = this.program.alphabet;
+        columnCount = alphabet.classCount();
+
+        ids = new HashMap<>();
+        sets = new ArrayList<>();
+        accepting = new boolean[16];
+        table = new int[16 * columnCount];
+        current = new SparseSet(this.program.stateCount());
+        next = new SparseSet(this.program.stateCount());
+
+        clears = 0;
+        fallback = false;
+        clearCache();
+    }
+
+    // Number of DFA states currently in the cache
+    public int cachedStates() {
+        return sets.size();
+    }
+
+    // Number of times the cache has been cleared for exceeding the budget
+    public int cacheClears() {
+        return clears;
+    }
+
+    // The share of the symbols matched by the DFA so far whose transition was in the cache
+    // Only misses are counted, the hits are the other symbols, so the loop pays nothing for it
+    public double cacheHitRate() {
+        return symbolCount == 0 ? 0 : 1 - (double) misses / symbolCount;
+    }
+
+    // Check if the DFA has given up and simulates the NFA instead
+    public boolean isFallback() {
+        return fallback;
+    }
+
+    // Check if the whole input matches the regular expression
+    public boolean matches(CharSequence input) {
+        if (fallback) {
+            program.loadStart(current);
+            return simulate(input, 0);
+        }
+
+        int state = start;
+        for (int i = 0; i < input.length(); i++) {
+            final int column = alphabet.classOf(input.charAt(i));
+            int target = table[state * columnCount + column];
+            if (target == UNKNOWN) {
+                target = computeTransition(state, column, symbolCount + i);
+                if (fallback) {
+                    // current holds the NFA states after input[i]
+                    symbolCount += i + 1;
+                    return simulate(input, i + 1);
+                }
+            }
+
+            if (target == DEAD) {
+                symbolCount += i + 1;
+                return false;
+            }
+            state = target;
+        }
+
+        symbolCount += input.length();
+        return accepting[state];
+    }
+
+    // Run the NFA from the states in current over the rest of the input
+    private boolean simulate(CharSequence input, int from) {
+        SparseSet states = current;
+        SparseSet scratch = next;
+        for (int i = from; i < input.length() && !states.isEmpty(); i++) {
+            program.step(states, input.charAt(i), scratch);
+
+            SparseSet temp = states;
+            states = scratch;
+            scratch = temp;
+        }
+
+        return program.isAccepting(states);
+    }
+
+    // Compute the transition with subset construction and cache the target
+    // Leaves the NFA states of the target in current
+    private int computeTransition(int state, int column, long position) {
+        misses++;
+        final int[] source = sets.get(state);
+        next.clear();
+        next.addAll(source, 0, source.length);
+        program.step(next, alphabet.representative(column), current);
+
+        if (current.isEmpty()) {
+            table[state * columnCount + column] = DEAD;
+            return DEAD;
+        }
+
+        int[] key = toArray(current);
+        Arrays.sort(key);
+        Integer target = ids.get(new StateKey(key));
+        if (target != null) {
+            table[state * columnCount + column] = target;
+            return target;
+        }
+
+        if (memory + stateSize(key) > budget) {
+            // Thrashing: the cleared states were used for too few symbols
+            if (clears > 0 && position - symbolsAtClear < (long) MIN_SYMBOLS_PER_STATE * statesSinceClear) {
+                fallback = true;
+                return DEAD;
+            }
+
+            // The source state is gone after clearing, so its row is not updated
+            clears++;
+            symbolsAtClear = position;
+            clearCache();
+            return addState(key);
+        }
+
+        target = addState(key);
+        table[state * columnCount + column] = target;
+        return target;
+    }
+
+    private int[] toArray(SparseSet set) {
+        int[] array = new int[set.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = set.get(i);
+        }
+        return array;
+    }
+
+    private long stateSize(int[] key) {
+        return STATE_OVERHEAD + 4L * (key.length + columnCount);
+    }
+
+    // Add a DFA state for the sorted set of NFA states
+    private int addState(int[] key) {
+        final int id = sets.size();
+        if (id == accepting.length) {
+            accepting = Arrays.copyOf(accepting, id * 2);
+            table = Arrays.copyOf(table, id * 2 * columnCount);
+        }
+
+        ids.put(new StateKey(key), id);
+        sets.add(key);
+        accepting[id] = program.accept != CompiledNFA.NONE && Arrays.binarySearch(key, program.accept) >= 0;
+        // No transition accepts the chars of class 0
+        Arrays.fill(table, id * columnCount, (id + 1) * columnCount, UNKNOWN);
+        table[id * columnCount] = DEAD;
+        memory += stateSize(key);
+        statesSinceClear++;
+        return id;
+    }
+
+    // Drop every state and start over from the start state
+    private void clearCache() {
+        ids.clear();
+        sets.clear();
+        memory = 0;
+        statesSinceClear = 0;
+
+        program.loadStart(current);
+        int[] key = toArray(current);
+        Arrays.sort(key);
+        start = addState(key);
+    }
+}
@@ -0,0 +1,103 @@
+import org.junit.*;
+
+public class LazyDFA_Test {
+    private static final String[] PATTERNS = {
+            "", "abc", "a*", "ab+c", "(a+|b)(a*|c)", "(ab|a)(bc|c)*", "((a|b)*c)+d", "x(y|z)*x",
+    };
+
+    private static final String[] INPUTS = {
+            "", "a", "b", "c", "abc", "abbc", "aaa", "ba", "aaac", "abcc", "abcbc", "abbcbc",
+            "cd", "abcd", "ccacbd", "xx", "xyzzyx", "xyzq", "d", "q",
+    };
+
+    private static NFA buildNFA(String regEx) {
+        NFA nfa = NFA.buildAutomaton(RegexParser.parse(regEx));
+        nfa.initialize();
+        return nfa;
+    }
+
+    private static boolean expected(NFA nfa, String input) {
+        nfa.initialize();
+        return nfa.match(input);
+    }
+
+    @Test
+    public void sameResultsAsNFA() {
+        for (String regEx : PATTERNS) {
+            NFA nfa = buildNFA(regEx);
+            LazyDFA dfa = new LazyDFA(nfa.getProgram());
+
+            // Match every input twice to exercise both cold and warm transitions
+            for (int round = 0; round < 2; round++) {
+                for (String input : INPUTS) {
+                    Assert.assertEquals(regEx + " on " + input, expected(nfa, input), dfa.matches(input));
+                }
+            }
+            Assert.assertEquals(false, dfa.isFallback());
+            Assert.assertEquals(0, dfa.cacheClears());
+        }
+    }
+
+    @Test
+    public void cacheHitRate() {
+        LazyDFA dfa = new LazyDFA(buildNFA("(a|b)*abb").getProgram());
+        Assert.assertEquals(0, dfa.cacheHitRate(), 0);
+
+        // The DFA of (a|b)*abb has 4 states with 2 live columns, so at most 8 transitions miss
+        dfa.matches("ab".repeat(500) + "b");
+        Assert.assertTrue(dfa.cacheHitRate() > 0.99);
+    }
+
+    @Test
+    public void cacheIsClearedWhenOverBudget() {
+        NFA nfa = buildNFA("(a|b)*a(a|b)(a|b)(a|b)");
+        // Room for a couple of states only
+        LazyDFA dfa = new LazyDFA(nfa.getProgram(), 400);
+
+        String input = "abbabaabbbaabab";
+        for (int i = 0; i < input.length(); i++) {
+            String prefix = input.substring(0, i + 1);
+            Assert.assertEquals(prefix, expected(nfa, prefix), dfa.matches(prefix));
+        }
+        Assert.assertTrue(dfa.cacheClears() > 0);
+    }
+
+    @Test
+    public void fallbackWhenThrashing() {
+        NFA nfa = buildNFA("(a|b)*a(a|b)(a|b)(a|b)(a|b)");
+        LazyDFA dfa = new LazyDFA(nfa.getProgram(), 1);
+
+        String input = "abbabaabbbaababbbaaabab";
+        Assert.assertEquals(expected(nfa, input), dfa.matches(input));
+        Assert.assertTrue(dfa.isFallback());
+
+        // Still correct after falling back
+        for (String other : new String[] { "abbbb", "bbbbb", "aaaaaaaa", "" }) {
+            Assert.assertEquals(other, expected(nfa, other), dfa.matches(other));
+        }
+    }
+
+    @Test
+    public void patternFlag() throws InterruptedException {
+        for (String regEx : PATTERNS) {
+            Pattern pattern = Pattern.compile(regEx, Pattern.LAZY_DFA);
+            NFA nfa = buildNFA(regEx);
+            for (String input : INPUTS) {
+                Assert.assertEquals(regEx + " on " + input, expected(nfa, input), pattern.matches(input));
+            }
+        }
+
+        // Every thread builds its own DFA
+        Pattern pattern = Pattern.compile("x(y|z)*x", Pattern.LAZY_DFA);
+        boolean[] results = new boolean[2];
+        Thread thread = new Thread(() -> {
+            results[0] = pattern.matches("xyzzyx");
+            results[1] = pattern.matches("xyzq");
+        });
+        thread.start();
+        thread.join();
+        Assert.assertEquals(true, results[0]);
+        Assert.assertEquals(false, results[1]);
+        Assert.assertEquals(true, pattern.matches("xx"));
+    }
+}
@@ -0,0 +1,37 @@
+public class Match {
+    /*
+     * The position of a match in the input
+     * The matched text is input[start] ... input[end - 1]
+     */
+    private final int start;
+    private final int end;
+
+    public Match(int start, int end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public int start() {
+        return start;
+    }
+
+    public int end() {
+        return end;
+    }
+
+    public boolean equals(Object other) {
+        if (!(other instanceof Match)) {
+            return false;
+        }
+        Match match = (Match) other;
+        return start == match.start && end == match.end;
+    }
+
+    public int hashCode() {
+        return start * 31 + end;
+    }
+
+    public String toString() {
+        return "[" + start + ", " + end + ")";
+    }
+}
@@ -0,0 +1,29 @@
+import jdk.jfr.*;
+
+@Name("epsilon.Match")
+@Label("Pattern Match")
+@Category("Epsilon-NFA")
+@Description("A call of Pattern.matches() that took longer than the threshold")
+@Threshold("1 ms")
+@StackTrace(false)
+final class MatchEvent extends Event {
+    /*
+     * A Flight Recorder event for a slow match
+     * Only created if the JVM runs with -Depsilon.metrics=true. The event
+     * is committed if a recording has it enabled and the match took longer
+     * than the threshold, which a recording can lower or raise with
+     * epsilon.Match#threshold. Grouping the events of a recording by
+     * pattern shows the patterns that burn the CPU.
+     */
+    @Label("Pattern")
+    String pattern;
+
+    @Label("Engine")
+    String engine;
+
+    @Label("Input Length")
+    int length;
+
+    @Label("Matched")
+    boolean matched;
+}
@@ -0,0 +1,39 @@
+public interface MatchMetrics {
+    /*
+     * What the matches of a pattern have cost so far
+     * The counters are only kept if the JVM runs with -Depsilon.metrics=true,
+     * otherwise they stay zero and the engines do not touch them.
+     * The NFA counters cover Pattern.matches(), matchesUtf8() and the matchers
+     * of the pattern, and a matcher adds its counts when it is reset
+     * or asked whether it accepts.
+     */
+
+    // The engine that answered a call of Pattern.matches()
+    enum Engine {
+        EXACT, // String comparison with the only string that matches
+        PREFILTER, // Rejected for lacking a required literal
+        BYTECODE, // The generated class of the minimal DFA
+        DFA, // The minimal DFA
+        LAZY_DFA, // The DFA built while matching
+        BIT_PARALLEL, // The position automaton in a long
+        NFA, // The fallback, simulating the NFA
+    }
+
+    // The number of calls of Pattern.matches()
+    long matches();
+
+    // The number of calls of Pattern.matches() that the engine answered
+    long matches(Engine engine);
+
+    // The chars or bytes that the NFA simulation consumed
+    long charsConsumed();
+
+    // The sum of the current states over every step of the NFA simulation
+    long statesVisited();
+
+    // The closures that the NFA simulation added, one for every symbol transition taken
+    long closureExpansions();
+
+    // Entry i counts the steps with 2^(i - 1) <= current states < 2^i
+    long[] activeStates();
+}
@@ -0,0 +1,200 @@
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+public class Matcher {
+    /*
+     * The per-match state of a compiled NFA
+     * The compiled program is immutable and shared, and a matcher only
+     * holds the current states and some scratch space.
+     * A matcher must not be used by two threads at once,
+     * but it can be reused for any number of inputs.
+     *
+     * The input can also be fed incrementally in chunks,
+     * and acceptance can be checked between any two chunks.
+     * Feeding stops early once the matcher is dead.
+     *
+     * Bytes are fed as the symbols 0 to 255, which is meant for
+     * programs lowered to UTF-8 by CompiledNFA.toUtf8().
+     */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final CompiledNFA program;
+    private SparseSet current; // The current states of the program
+    private SparseSet next; // Scratch set for the states after the next symbol
+    private CompiledNFA.Counts counts; // The count sets of the current states, null if the program does not count
+    private CompiledNFA.Counts nextCounts;
+
+    // The counts of the steps, null unless metrics are enabled and the matcher belongs to a pattern
+    private final PatternMetrics metrics;
+    private final PatternMetrics.Tally tally;
+
+    public Matcher(CompiledNFA program) {
+        this(program, null);
+    }
+
+    Matcher(CompiledNFA program, PatternMetrics metrics) {
+        this.program = program;
+        this.metrics = PatternMetrics.ENABLED ? metrics : null;
+        tally = this.metrics != null ? new PatternMetrics.Tally() : null;
+        current = new SparseSet(program.stateCount());
+        next = new SparseSet(program.stateCount());
+        if (program.hasCounters()) {
+            counts = new CompiledNFA.Counts(program);
+            nextCounts = new CompiledNFA.Counts(program);
+        }
+        reset();
+    }
+
+    // Go back to the epsilon closure of the start state
+    public void reset() {
+        if (PatternMetrics.ENABLED && metrics != null) {
+            metrics.add(tally);
+        }
+        if (counts == null) {
+            program.loadStart(current);
+        } else {
+            program.loadStart(current, counts);
+        }
+    }
+
+    // Continue from the current states with the input
+    // and check if the states after it are acceptable
+    public boolean match(CharSequence input) {
+        feed(input);
+        return isAcceptable();
+    }
+
+    // Check if the whole input matches, starting from the start state
+    public boolean matches(CharSequence input) {
+        reset();
+        feed(input);
+        return isAcceptable();
+    }
+
+    // Continue with input[offset] ... input[offset + length - 1]
+    // Returns false if the matcher is dead
+    public boolean feed(char[] input, int offset, int length) {
+        final int end = offset + length;
+        for (int i = offset; i < end && !current.isEmpty(); i++) {
+            step(input[i]);
+        }
+
+        return !isDead();
+    }
+
+    // Continue with the input without copying it
+    // Returns false if the matcher is dead
+    public boolean feed(CharSequence input) {
+        for (int i = 0; i < input.length() && !current.isEmpty(); i++) {
+            step(input.charAt(i));
+        }
+
+        return !isDead();
+    }
+
+    // Continue with the remaining chars of the buffer
+    // The position is advanced past the consumed chars,
+    // which are all of them unless the matcher dies on the way
+    // Returns false if the matcher is dead
+    public boolean feed(CharBuffer input) {
+        int position = input.position();
+        while (position < input.limit() && !current.isEmpty()) {
+            step(input.get(position));
+            position++;
+        }
+        input.position(position);
+
+        return !isDead();
+    }
+
+    // Continue with the chars of the reader until it ends
+    // Stops reading as soon as the matcher is dead
+    // Returns false if the matcher is dead
+    public boolean feed(Reader input) throws IOException {
+        char[] buffer = new char[READ_BUFFER_SIZE];
+        while (!current.isEmpty()) {
+            final int length = input.read(buffer);
+            if (length == -1) {
+                break;
+            }
+            feed(buffer, 0, length);
+        }
+
+        return !isDead();
+    }
+
+    // Continue with the bytes input[offset] ... input[offset + length - 1]
+    // Returns false if the matcher is dead
+    public boolean feed(byte[] input, int offset, int length) {
+        final int end = offset + length;
+        for (int i = offset; i < end && !current.isEmpty(); i++) {
+            step((char) (input[i] & 0xff));
+        }
+
+        return !isDead();
+    }
+
+    // Continue with the remaining bytes of the buffer
+    // The position is advanced past the consumed bytes
+    // Returns false if the matcher is dead
+    public boolean feed(ByteBuffer input) {
+        int position = input.position();
+        while (position < input.limit() && !current.isEmpty()) {
+            step((char) (input.get(position) & 0xff));
+            position++;
+        }
+        input.position(position);
+
+        return !isDead();
+    }
+
+    // Check if no further input can make the matcher acceptable
+    // Every current state can reach the accept state,
+    // so this is the case exactly when there are no current states
+    public boolean isDead() {
+        return current.isEmpty();
+    }
+
+    // Update the current states for the input symbol
+    // The two state sets are swapped instead of allocating a new one
+    public void step(char symbol) {
+        final int closures;
+        if (counts == null) {
+            closures = program.step(current, symbol, next);
+        } else {
+            closures = program.step(current, symbol, next, counts, nextCounts);
+            CompiledNFA.Counts temp = counts;
+            counts = nextCounts;
+            nextCounts = temp;
+        }
+
+        SparseSet temp = current;
+        current = next;
+        next = temp;
+
+        if (PatternMetrics.ENABLED && metrics != null) {
+            tally.step(current.size(), closures);
+        }
+    }
+
+    // Check if current states are acceptable
+    public boolean isAcceptable() {
+        if (PatternMetrics.ENABLED && metrics != null) {
+            metrics.add(tally);
+        }
+        return program.isAccepting(current);
+    }
+
+    // The patterns whose accept states are current, for the program of a pattern set
+    BitSet acceptedPatterns() {
+        BitSet accepted = new BitSet(program.patternCount);
+        for (int i = 0; i < current.size(); i++) {
+            final int id = program.acceptId[current.get(i)];
+            if (id != CompiledNFA.NONE) {
+                accepted.set(id);
+            }
+        }
+        return accepted;
+    }
+}
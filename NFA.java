@@ -1,14 +1,18 @@
 import java.util.*;
 
 public class NFA {
+    // The most states that the copies of a counted repetition may have
+    public static final int MAX_REPEAT_STATES = 100000;
+
     private State start;
     private State end;
-    private Set<State> current; // The current states that this NFA is in
+    private CompiledNFA program; // The flat form of the state graph, built on first use
+    private Matcher matcher; // The current states that this NFA is in
 
     public NFA(State start, State end) {
         this.start = start;
         this.end = end;
-        current = new HashSet<>();
+        program = null;
     }
 
     // Building block: epsilon transition
@@ -29,6 +33,15 @@ public class NFA {
         return new NFA(start, end);
     }
 
+    // Building block: character class, a single transition on any char of the class
+    private static NFA classNFA(char[] ranges) {
+        State start = new State(false);
+        State end = new State(true);
+        State.addTo(start, end, ranges);
+
+        return new NFA(start, end);
+    }
+
     // Building block: concatenation
     private static NFA concat(NFA first, NFA second) {
         State.addEpTo(first.end, second.start);
@@ -80,7 +93,173 @@ public class NFA {
         return new NFA(start, end);
     }
 
-    // Assemble the building blocks
+    // Building block: counted repetition, min to max copies of the NFA
+    // A single char or class is counted instead, see counter()
+    // Otherwise the copies after the first min ones are optional, and each of them can skip
+    // straight to the end, so the epsilon transitions grow linearly with max
+    private static NFA repeat(NFA nfa, int min, int max) throws IllegalArgumentException {
+        if (isSingleClass(nfa) && (max == RegexParser.UNBOUNDED ? min > 1 : max > 1)) {
+            return counter(nfa, min, max);
+        }
+
+        final int copies = max == RegexParser.UNBOUNDED ? Math.max(min, 1) : max;
+        if ((long) copies * unrolledStates(nfa) > MAX_REPEAT_STATES) {
+            throw new IllegalArgumentException("Repetition exceeds " + MAX_REPEAT_STATES + " states");
+        }
+
+        if (max == 0) {
+            return epNFA();
+        }
+        if (max == RegexParser.UNBOUNDED && min == 0) {
+            return repetition(nfa);
+        }
+
+        // The first min copies are mandatory, and with no upper bound the last of them repeats
+        NFA result = null;
+        for (int i = 0; i < min; i++) {
+            NFA copy = i == copies - 1 ? nfa : copy(nfa);
+            if (max == RegexParser.UNBOUNDED && i == min - 1) {
+                copy = oneOrMore(copy);
+            }
+            result = result == null ? copy : concat(result, copy);
+        }
+        if (max == min || max == RegexParser.UNBOUNDED) {
+            return result;
+        }
+
+        // Every optional copy starts with a choice between the copy and the end
+        State end = new State(true);
+        State start = new State(false);
+        State first = start;
+        for (int i = min; i < max; i++) {
+            NFA copy = i == max - 1 ? nfa : copy(nfa);
+            State.addEpTo(start, copy.start);
+            State.addEpTo(start, end);
+            copy.end.isFinal = false;
+            if (i < max - 1) {
+                start = new State(false);
+                State.addEpTo(copy.end, start);
+            } else {
+                State.addEpTo(copy.end, end);
+            }
+        }
+
+        NFA optional = new NFA(first, end);
+        return result == null ? optional : concat(result, optional);
+    }
+
+    /*
+     * Building block: counted repetition of a single char or class
+     * The transition on the class leads to a counter gate, whose epsilon
+     * transitions go back to the class and on to the end. Every thread
+     * counts the chars it took, and the gate only lets it go back while its
+     * count is below max, and on to the end once the count reached min.
+     * So the repetition takes the same few states whatever its bounds,
+     * and CompiledNFA keeps the counts while matching.
+     */
+    private static NFA counter(NFA nfa, int min, int max) {
+        State gate = new State(false);
+        State end = new State(true);
+        gate.bounds = new int[] { min, max };
+        State.addTo(nfa.start, gate, nfa.start.to.ranges);
+        State.addEpTo(gate, nfa.start);
+        State.addEpTo(gate, end);
+        if (min > 0) {
+            return new NFA(nfa.start, end);
+        }
+
+        // Zero chars skip the counter altogether
+        State start = new State(false);
+        State.addEpTo(start, nfa.start);
+        State.addEpTo(start, end);
+        return new NFA(start, end);
+    }
+
+    // Check if the NFA is a single transition on a char or class, as symbolNFA() and classNFA() build it
+    private static boolean isSingleClass(NFA nfa) {
+        return nfa.start.to != null && nfa.start.to.next == nfa.end && nfa.end.to == null && nfa.end.epTo.isEmpty();
+    }
+
+    // A fresh copy of the states of the NFA
+    private static NFA copy(NFA nfa) {
+        Map<State, State> copies = new HashMap<>();
+        Deque<State> stack = new ArrayDeque<>();
+        copies.put(nfa.start, new State(nfa.start.isFinal));
+        stack.push(nfa.start);
+        while (!stack.isEmpty()) {
+            State curr = stack.pop();
+            List<State> neighbors = new ArrayList<>(curr.epTo);
+            if (curr.to != null) {
+                neighbors.add(curr.to.next);
+            }
+            for (State neighbor : neighbors) {
+                if (!copies.containsKey(neighbor)) {
+                    copies.put(neighbor, new State(neighbor.isFinal));
+                    stack.push(neighbor);
+                }
+            }
+
+            State copy = copies.get(curr);
+            copy.bounds = curr.bounds;
+            for (State neighbor : curr.epTo) {
+                State.addEpTo(copy, copies.get(neighbor));
+            }
+            if (curr.to != null) {
+                State.addTo(copy, copies.get(curr.to.next), curr.to.ranges);
+            }
+        }
+
+        return new NFA(copies.get(nfa.start), copies.get(nfa.end));
+    }
+
+    // Number of states of the NFA, before the flat form leaves out the ones that only pass on threads
+    public int stateCount() {
+        return countStates(this);
+    }
+
+    // Number of states of the NFA
+    private static int countStates(NFA nfa) {
+        return states(nfa).size();
+    }
+
+    // Number of states of the NFA with its counters unrolled into copies, as the DFA engines match it
+    // A counter becomes a state and an arrival state for every count, see CompiledNFA.withoutCounters()
+    private static long unrolledStates(NFA nfa) {
+        long count = 0;
+        for (State state : states(nfa)) {
+            count += state.bounds == null ? 1 : 2L * CompiledNFA.counts(state.bounds[0], state.bounds[1]);
+        }
+        return count;
+    }
+
+    // The states of the NFA
+    private static Set<State> states(NFA nfa) {
+        Set<State> visited = new HashSet<>();
+        Deque<State> stack = new ArrayDeque<>();
+        visited.add(nfa.start);
+        stack.push(nfa.start);
+        while (!stack.isEmpty()) {
+            State curr = stack.pop();
+            for (State neighbor : curr.epTo) {
+                if (visited.add(neighbor)) {
+                    stack.push(neighbor);
+                }
+            }
+            if (curr.to != null && visited.add(curr.to.next)) {
+                stack.push(curr.to.next);
+            }
+        }
+        return visited;
+    }
+
+    /*
+     * Assemble the building blocks
+     * Besides the operators, the postfix expression holds
+     * plain chars, a backslash and the char for the chars with a special meaning,
+     * and character classes, which are '[', the number of intervals n as a char
+     * and 2n chars of lo, hi pairs.
+     * A counted repetition is the operator '{' and its two bounds as chars.
+     */
     public static NFA buildAutomaton(String postfixExp) {
         // Special case: empty regular expression
         if (postfixExp.length() == 0) {
@@ -105,6 +284,15 @@ public class NFA {
                 NFA right = blocks.pop();
                 NFA left = blocks.pop();
                 block = concat(left, right);
+            } else if (curr == '{') {
+                block = repeat(blocks.pop(), postfixExp.charAt(i + 1), postfixExp.charAt(i + 2));
+                i += 2;
+            } else if (curr == '\\') {
+                block = symbolNFA(postfixExp.charAt(++i));
+            } else if (curr == '[') {
+                final int length = 2 * postfixExp.charAt(i + 1);
+                block = classNFA(postfixExp.substring(i + 2, i + 2 + length).toCharArray());
+                i += 1 + length;
             } else {
                 block = symbolNFA(curr);
             }
@@ -120,102 +308,96 @@ public class NFA {
         return blocks.pop();
     }
 
-    // Get the epsilon closure of the start state
-    // and store them in the current field
-    public void initialize() {
-        current.clear();
-        current.add(start);
-        current = getEpClosure(current);
+    // Getter for the flat form of this NFA
+    public CompiledNFA getProgram() {
+        return program();
     }
 
-    // Get the epsilon closure of the input state set
-    private static Set<State> getEpClosure(Set<State> states) {
-        Set<State> epClosure = new HashSet<>();
-
-        // Perform dfs from every state in the current state set
-        for (State state : states) {
-            epsilonDFS(state, epClosure);
+    // Flatten the state graph on first use
+    // The building blocks are never matched against, so they stay cheap
+    private CompiledNFA program() {
+        if (program == null) {
+            program = CompiledNFA.compile(start, end);
+            matcher = new Matcher(program);
         }
-
-        return epClosure;
+        return program;
     }
 
-    // Depth first search from current state to get the epsilon closure
-    // Only consider epislon transitions
-    // Helper method for getEpClosure()
-    private static void epsilonDFS(State curr, Set<State> visited) {
-        if (visited.contains(curr)) {
-            return;
+    // Merge the automata of a pattern set into one program
+    // Like the union building block, a new start state has epsilon transitions
+    // to the start of every automaton, but the end states are kept apart
+    // so that each of them still tells which pattern matched
+    public static CompiledNFA compileSet(List<NFA> automata) {
+        State start = new State(false);
+        State[] ends = new State[automata.size()];
+        for (int i = 0; i < ends.length; i++) {
+            State.addEpTo(start, automata.get(i).start);
+            ends[i] = automata.get(i).end;
         }
 
-        visited.add(curr);
+        return CompiledNFA.compile(start, ends);
+    }
 
-        for (State neighbor : curr.epTo) {
-            epsilonDFS(neighbor, visited);
-        }
+    // Get the epsilon closure of the start state
+    // and store them in the current field
+    public void initialize() {
+        program();
+        matcher.reset();
     }
 
     // Traverse the nfa to see if the input word matches the regular expression
     public boolean match(String word) {
-        for (char symbol : word.toCharArray()) {
-            matchSymbol(symbol);
-        }
-
-        return isAcceptable();
-    }
-
-    // Update the current states for the input symbol
-    private void matchSymbol(char symbol) {
-        Set<State> next = new HashSet<>();
-
-        for (State state : current) {
-            if (state.to != null && state.to.symbol == symbol) {
-                next.add(state.to.next);
-            }
-        }
-
-        current = getEpClosure(next);
+        program();
+        return matcher.match(word);
     }
 
     // Check if current states are acceptable
     public boolean isAcceptable() {
-        return current.contains(end);
+        program();
+        return matcher.isAcceptable();
     }
 
     // Depth first search to label every state in the NFA
     // Helper function for buildTable()
-    private void label(State curr, List<Map<Character, List<State>>> table, Set<Character> symbols) {
-        // Check if the current state has been visited
-        if (curr.id != -1) {
-            return;
-        }
+    // The stack is explicit so that long patterns cannot overflow the call stack
+    private void label(State start, List<Map<String, List<State>>> table, Set<String> symbols) {
+        Deque<State> stack = new ArrayDeque<>();
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            State curr = stack.pop();
+
+            // Check if the current state has been visited
+            if (curr.id != -1) {
+                continue;
+            }
 
-        curr.id = table.size();
-        Map<Character, List<State>> neighbors = new HashMap<>(); // The neighbor list for current state
-        table.add(neighbors);
-
-        // Explore neighboring states
-        if (curr.to != null) {
-            symbols.add(curr.to.symbol);
-            neighbors.put(curr.to.symbol, Arrays.asList(curr.to.next));
-            label(curr.to.next, table, symbols);
-        } else if (!curr.epTo.isEmpty()) {
-            neighbors.put('ε', curr.epTo);
-            for (State neighbor : curr.epTo) {
-                label(neighbor, table, symbols);
+            curr.id = table.size();
+            Map<String, List<State>> neighbors = new HashMap<>(); // The neighbor list for current state
+            table.add(neighbors);
+
+            // Explore neighboring states, pushed in reverse so that they are visited in order
+            if (curr.to != null) {
+                symbols.add(curr.to.label());
+                neighbors.put(curr.to.label(), Arrays.asList(curr.to.next));
+                stack.push(curr.to.next);
+            } else if (!curr.epTo.isEmpty()) {
+                neighbors.put("ε", curr.epTo);
+                for (int i = curr.epTo.size() - 1; i >= 0; i--) {
+                    stack.push(curr.epTo.get(i));
+                }
             }
         }
     }
 
     // Traverse the NFA to construct transition table
-    private List<Map<Character, List<State>>> buildTable(Set<Character> symbols) {
+    private List<Map<String, List<State>>> buildTable(Set<String> symbols) {
         // In table,
         // each entry stores the neighbor list of the state whose id is the same as
         // entry index
         // the neighbor list are hashmaps
-        // key is the symbol required to transit to neighbors
+        // key is the symbol or character class required to transit to neighbors
         // value is the neighbor state list
-        List<Map<Character, List<State>>> table = new ArrayList<>();
+        List<Map<String, List<State>>> table = new ArrayList<>();
         label(start, table, symbols);
         return table;
     }
@@ -232,14 +414,14 @@ public class NFA {
 
     // Print the transition table
     public void printTable() {
-        Set<Character> symbols = new HashSet<>(); // Store all the symbols in the regEx
-        List<Map<Character, List<State>>> table = buildTable(symbols);
+        Set<String> symbols = new HashSet<>(); // Store all the symbols in the regEx
+        List<Map<String, List<State>>> table = buildTable(symbols);
 
         // Print header row
         printEntry(""); // Print header row title, which is an empty entry
         printEntry("Epsilon"); // Print the header for epsilon column
-        for (char sym : symbols) {
-            printEntry(Character.toString(sym));
+        for (String sym : symbols) {
+            printEntry(sym);
         }
         System.out.println(); // Change line
 
@@ -255,7 +437,7 @@ public class NFA {
             printEntry(title);
 
             // Print epsilon column
-            List<State> epNeighbors = table.get(curr).get('ε');
+            List<State> epNeighbors = table.get(curr).get("ε");
             String epEntry = new String();
             if (epNeighbors != null) {
                 epEntry = epNeighbors.toString();
@@ -264,7 +446,7 @@ public class NFA {
             printEntry(epEntry);
 
             // Print the content of current row
-            for (char sym : symbols) {
+            for (String sym : symbols) {
                 List<State> neighbor = table.get(curr).get(sym);
                 String entry = new String();
                 if (neighbor != null) {
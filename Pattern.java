@@ -0,0 +1,238 @@
+import java.nio.*;
+import java.util.*;
+
+public class Pattern {
+    /*
+     * A compiled regular expression
+     * A pattern is immutable, so the same instance can be handed out
+     * by the pattern cache to every caller that compiles the same regEx,
+     * and it can be used from any number of threads at once.
+     * The mutable state of a match lives in a Matcher instead.
+     */
+
+    // Flag: also build the minimal DFA when compiling, see DFA.build()
+    public static final int EAGER_DFA = 1;
+
+    // Flag: match with a DFA that is built while matching, one per thread, see LazyDFA
+    public static final int LAZY_DFA = 2;
+
+    // Flag: also generate a JVM class for the minimal DFA, see BytecodeCompiler
+    public static final int GENERATE_BYTECODE = 4;
+
+    // Flag: build the epsilon-free position automaton instead of Thompson's NFA, see GlushkovBuilder
+    public static final int GLUSHKOV = 8;
+
+    private final String regEx;
+    private final int flags;
+    private final CompiledNFA program;
+    private final Prefilter prefilter; // Rejects inputs without the required literals
+    private final DFA dfa; // null unless the EAGER_DFA or GENERATE_BYTECODE flag is set
+    private final CharMatcher generated; // null unless the GENERATE_BYTECODE flag is set and the DFA fits
+    private final ThreadLocal<LazyDFA> lazyDFAs; // null unless the LAZY_DFA flag is set
+    private final BitParallelNFA bitParallel; // null unless the position automaton fits in a long
+    private final ThreadLocal<Matcher> matchers; // One reusable matcher per thread
+    private final PatternMetrics metrics; // Stays zero unless metrics are enabled
+
+    // The program lowered to UTF-8 bytes, built on first use
+    // Racing threads may build it twice, but they build equal immutable programs
+    private volatile CompiledNFA utf8Program;
+    private final ThreadLocal<Matcher> utf8Matchers;
+
+    private Pattern(String regEx, int flags) {
+        this.regEx = regEx;
+        this.flags = flags;
+        final RegexNode tree = RegexSimplifier.simplify(RegexParser.parseTree(regEx));
+        final String postfix = tree.toPostfix();
+        program = (flags & GLUSHKOV) != 0 ? GlushkovBuilder.build(tree) : NFA.buildAutomaton(postfix).getProgram();
+        bitParallel = bitParallelOf(tree, flags);
+        prefilter = Prefilter.of(postfix);
+        dfa = (flags & (EAGER_DFA | GENERATE_BYTECODE)) != 0 ? DFA.build(program) : null;
+        generated = (flags & GENERATE_BYTECODE) != 0 ? generatedOf(dfa) : null;
+        lazyDFAs = (flags & LAZY_DFA) != 0 ? ThreadLocal.withInitial(() -> new LazyDFA(program)) : null;
+        metrics = new PatternMetrics();
+        matchers = ThreadLocal.withInitial(this::matcher);
+        utf8Matchers = ThreadLocal.withInitial(this::utf8Matcher);
+    }
+
+    // A DFA too big for a method that the JIT compiles is matched with its tables instead
+    private static CharMatcher generatedOf(DFA dfa) {
+        try {
+            return BytecodeCompiler.compile(dfa);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Short patterns are matched bit-parallel on their position automaton
+    private BitParallelNFA bitParallelOf(RegexNode tree, int flags) {
+        if (GlushkovBuilder.positionCount(tree) + 2 > BitParallelNFA.MAX_STATES) {
+            return null;
+        }
+        return BitParallelNFA.of((flags & GLUSHKOV) != 0 ? program : GlushkovBuilder.build(tree));
+    }
+
+    // Compile the regular expression, or reuse it from the shared pattern cache
+    public static Pattern compile(String regEx) throws IllegalArgumentException {
+        return compile(regEx, 0);
+    }
+
+    public static Pattern compile(String regEx, int flags) throws IllegalArgumentException {
+        return PatternCache.shared().get(regEx, flags);
+    }
+
+    // Compile the regular expression without going through any cache
+    static Pattern compileUncached(String regEx, int flags) throws IllegalArgumentException {
+        return new Pattern(regEx, flags);
+    }
+
+    public String regEx() {
+        return regEx;
+    }
+
+    public int flags() {
+        return flags;
+    }
+
+    public CompiledNFA program() {
+        return program;
+    }
+
+    public Prefilter prefilter() {
+        return prefilter;
+    }
+
+    // What the matches of this pattern have cost, all zero unless the JVM runs with -Depsilon.metrics=true
+    public MatchMetrics metrics() {
+        return metrics;
+    }
+
+    // The program that matches the UTF-8 encoding of the inputs of this pattern
+    public CompiledNFA utf8Program() {
+        CompiledNFA lowered = utf8Program;
+        if (lowered == null) {
+            lowered = program.toUtf8();
+            utf8Program = lowered;
+        }
+        return lowered;
+    }
+
+    // Create a new matcher that is fed UTF-8 bytes
+    public Matcher utf8Matcher() {
+        return new Matcher(utf8Program(), metrics);
+    }
+
+    // Check if the UTF-8 bytes input[offset] ... input[offset + length - 1]
+    // match the regular expression, without decoding them
+    public boolean matchesUtf8(byte[] input, int offset, int length) {
+        if (prefilter.rejectsUtf8(ByteBuffer.wrap(input), offset, offset + length)) {
+            return false;
+        }
+
+        Matcher matcher = utf8Matchers.get();
+        matcher.reset();
+        matcher.feed(input, offset, length);
+        return matcher.isAcceptable();
+    }
+
+    // Check if the remaining UTF-8 bytes of the buffer match the regular expression
+    // The position of the buffer is not changed
+    public boolean matchesUtf8(ByteBuffer input) {
+        if (prefilter.rejectsUtf8(input, input.position(), input.limit())) {
+            return false;
+        }
+
+        Matcher matcher = utf8Matchers.get();
+        matcher.reset();
+        matcher.feed(input.duplicate());
+        return matcher.isAcceptable();
+    }
+
+    // Create a new matcher, which belongs to the calling thread
+    public Matcher matcher() {
+        return new Matcher(program, metrics);
+    }
+
+    // The matcher of the calling thread, reused across calls
+    // It must not escape the thread, and matches() resets it
+    public Matcher localMatcher() {
+        return matchers.get();
+    }
+
+    // Check if the whole input matches the regular expression
+    // Most inputs lack a required literal, and they never reach the automaton
+    public boolean matches(CharSequence input) {
+        if (!PatternMetrics.ENABLED) {
+            return matches(input, null);
+        }
+
+        MatchEvent event = new MatchEvent();
+        event.begin();
+        final boolean matched = matches(input, event);
+        event.end();
+        if (event.shouldCommit()) {
+            event.pattern = regEx;
+            event.length = input.length();
+            event.matched = matched;
+            event.commit();
+        }
+        return matched;
+    }
+
+    // The event is null unless metrics are enabled
+    private boolean matches(CharSequence input, MatchEvent event) {
+        if (prefilter.exact() != null) {
+            record(MatchMetrics.Engine.EXACT, event);
+            return prefilter.exact().contentEquals(input);
+        }
+
+        if (prefilter.rejects(input)) {
+            record(MatchMetrics.Engine.PREFILTER, event);
+            return false;
+        }
+
+        if (generated != null) {
+            record(MatchMetrics.Engine.BYTECODE, event);
+            return generated.matches(input);
+        }
+
+        if (dfa != null) {
+            record(MatchMetrics.Engine.DFA, event);
+            return dfa.matches(input);
+        }
+
+        if (lazyDFAs != null) {
+            record(MatchMetrics.Engine.LAZY_DFA, event);
+            return lazyDFAs.get().matches(input);
+        }
+
+        if (bitParallel != null) {
+            record(MatchMetrics.Engine.BIT_PARALLEL, event);
+            return bitParallel.matches(input);
+        }
+
+        record(MatchMetrics.Engine.NFA, event);
+        return localMatcher().matches(input);
+    }
+
+    private void record(MatchMetrics.Engine engine, MatchEvent event) {
+        if (PatternMetrics.ENABLED) {
+            metrics.recordMatch(engine);
+            event.engine = engine.name();
+        }
+    }
+
+    // Find the leftmost longest match anywhere in the input
+    // Returns null if there is none
+    public Match find(CharSequence input) {
+        return new Searcher(program, prefilter).find(input, 0);
+    }
+
+    // Iterate over the non-overlapping leftmost longest matches in the input
+    public Iterable<Match> findAll(final CharSequence input) {
+        return () -> new Searcher(program, prefilter).findAll(input);
+    }
+
+    public String toString() {
+        return regEx;
+    }
+}
@@ -0,0 +1,152 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class PatternCache {
+    /*
+     * A size bounded cache of compiled patterns
+     * keyed by the regular expression and the compile flags
+     * The least recently used pattern is evicted when the cache is full.
+     *
+     * The cache is thread safe, and a hit takes no lock. Patterns are compiled
+     * outside of the lock, so a slow compile never blocks lookups of other patterns.
+     *
+     * Recency is kept as a clock that only ticks on misses. A miss stamps
+     * its new entry with the even tick, and a hit stamps its entry with the
+     * odd value after it, only writing the stamp if it changed, so a hot
+     * pattern costs a map lookup and two reads. The patterns used since
+     * the last miss are all equally recent, which is enough because only
+     * a miss evicts. Eviction scans the entries for the oldest stamp,
+     * which is cheap next to the compile that the miss already pays for.
+     */
+    public static final int DEFAULT_CAPACITY = 512;
+
+    private static final PatternCache SHARED = new PatternCache(DEFAULT_CAPACITY);
+
+    private final int capacity;
+    private final ConcurrentHashMap<Key, Entry> patterns;
+    private final AtomicLong clock = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public PatternCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive");
+        }
+
+        this.capacity = capacity;
+        patterns = new ConcurrentHashMap<>();
+    }
+
+    // The process wide cache used by Pattern.compile()
+    public static PatternCache shared() {
+        return SHARED;
+    }
+
+    // Look up the compiled pattern, compiling it on a miss
+    public Pattern get(String regEx, int flags) throws IllegalArgumentException {
+        final Key key = new Key(regEx, flags);
+        Entry entry = patterns.get(key);
+        if (entry != null) {
+            hits.increment();
+            entry.touch(clock.get() + 1);
+            return entry.pattern;
+        }
+        misses.increment();
+
+        // Invalid regular expressions throw here and are never cached
+        Pattern compiled = Pattern.compileUncached(regEx, flags);
+
+        // Another thread may have compiled the same pattern meanwhile
+        entry = patterns.putIfAbsent(key, new Entry(compiled, clock.addAndGet(2)));
+        if (entry != null) {
+            return entry.pattern;
+        }
+        if (patterns.size() > capacity) {
+            evict();
+        }
+        return compiled;
+    }
+
+    // Remove the least recently used patterns until the cache is within its capacity
+    private synchronized void evict() {
+        while (patterns.size() > capacity) {
+            Map.Entry<Key, Entry> eldest = null;
+            for (Map.Entry<Key, Entry> candidate : patterns.entrySet()) {
+                if (eldest == null || candidate.getValue().lastUsed < eldest.getValue().lastUsed) {
+                    eldest = candidate;
+                }
+            }
+            if (eldest != null && patterns.remove(eldest.getKey(), eldest.getValue())) {
+                evictions.increment();
+            }
+        }
+    }
+
+    public int size() {
+        return patterns.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    // Drop every pattern, the counters are kept
+    public void clear() {
+        patterns.clear();
+    }
+
+    private static final class Entry {
+        final Pattern pattern;
+        volatile long lastUsed; // The clock when the pattern was last looked up
+
+        Entry(Pattern pattern, long lastUsed) {
+            this.pattern = pattern;
+            this.lastUsed = lastUsed;
+        }
+
+        // Skip the write if the stamp is current, so a hot entry stays in every core's cache
+        void touch(long now) {
+            if (lastUsed != now) {
+                lastUsed = now;
+            }
+        }
+    }
+
+    private static final class Key {
+        private final String regEx;
+        private final int flags;
+
+        Key(String regEx, int flags) {
+            this.regEx = regEx;
+            this.flags = flags;
+        }
+
+        @Override
+        public int hashCode() {
+            return regEx.hashCode() * 31 + flags;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return flags == key.flags && regEx.equals(key.regEx);
+        }
+    }
+}
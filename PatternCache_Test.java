@@ -0,0 +1,94 @@
+import org.junit.*;
+
+public class PatternCache_Test {
+    @Test
+    public void hitReturnsSamePattern() {
+        PatternCache cache = new PatternCache(4);
+        Pattern first = cache.get("(a|b)*c", 0);
+        Pattern second = cache.get("(a|b)*c", 0);
+
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, cache.hits());
+        Assert.assertEquals(1, cache.misses());
+        Assert.assertEquals(true, second.matches("abbac"));
+        Assert.assertEquals(false, second.matches("abba"));
+    }
+
+    @Test
+    public void flagsArePartOfTheKey() {
+        PatternCache cache = new PatternCache(4);
+        Pattern nfa = cache.get("ab*", 0);
+        Pattern dfa = cache.get("ab*", Pattern.EAGER_DFA);
+
+        Assert.assertNotSame(nfa, dfa);
+        Assert.assertEquals(2, cache.misses());
+        Assert.assertEquals(nfa.matches("abbb"), dfa.matches("abbb"));
+        Assert.assertEquals(nfa.matches("ba"), dfa.matches("ba"));
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        PatternCache cache = new PatternCache(2);
+        Pattern a = cache.get("a", 0);
+        cache.get("b", 0);
+        cache.get("a", 0); // "b" is now the least recently used
+        cache.get("c", 0);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.evictions());
+        Assert.assertSame(a, cache.get("a", 0));
+        Assert.assertEquals(2, cache.hits());
+
+        cache.get("b", 0);
+        Assert.assertEquals(4, cache.misses());
+        Assert.assertEquals(2, cache.evictions());
+    }
+
+    @Test
+    public void invalidPatternIsNotCached() {
+        PatternCache cache = new PatternCache(2);
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get("a||b", 0);
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void newPatternIsNotEvicted() {
+        PatternCache cache = new PatternCache(1);
+        cache.get("a", 0);
+        cache.get("a", 0);
+        Pattern b = cache.get("b", 0);
+
+        Assert.assertEquals(1, cache.size());
+        Assert.assertSame(b, cache.get("b", 0));
+        Assert.assertEquals(2, cache.hits());
+    }
+
+    @Test
+    public void concurrentLookups() throws InterruptedException {
+        PatternCache cache = new PatternCache(4);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    Assert.assertEquals("ab" + i % 6, cache.get("ab" + i % 6, 0).regEx());
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertTrue(cache.size() <= 4);
+        Assert.assertEquals(4000, cache.hits() + cache.misses());
+    }
+}
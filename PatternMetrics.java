@@ -0,0 +1,112 @@
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+final class PatternMetrics implements MatchMetrics {
+    /*
+     * The counters of one pattern, shared by every thread that uses it
+     * ENABLED is a constant, so with metrics off the JIT compiler drops
+     * every check of it together with the code it guards.
+     *
+     * A matcher counts its steps in a Tally of plain fields, and adds them
+     * to the shared counters once per match, so the hot loop never
+     * touches memory that other threads write.
+     */
+    static final boolean ENABLED = Boolean.getBoolean("epsilon.metrics");
+
+    static final int BUCKETS = Integer.SIZE + 1;
+
+    private final LongAdder matches = new LongAdder();
+    private final LongAdder[] engines = adders(Engine.values().length);
+    private final LongAdder chars = new LongAdder();
+    private final LongAdder visited = new LongAdder();
+    private final LongAdder expansions = new LongAdder();
+    private final LongAdder[] histogram = adders(BUCKETS);
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    // A call of Pattern.matches() answered by the engine
+    void recordMatch(Engine engine) {
+        matches.increment();
+        engines[engine.ordinal()].increment();
+    }
+
+    // Add the counts of the tally and start it over
+    void add(Tally tally) {
+        if (tally.chars == 0) {
+            return;
+        }
+
+        chars.add(tally.chars);
+        visited.add(tally.visited);
+        expansions.add(tally.expansions);
+        for (int i = 0; i < BUCKETS; i++) {
+            if (tally.histogram[i] != 0) {
+                histogram[i].add(tally.histogram[i]);
+            }
+        }
+        tally.clear();
+    }
+
+    @Override
+    public long matches() {
+        return matches.sum();
+    }
+
+    @Override
+    public long matches(Engine engine) {
+        return engines[engine.ordinal()].sum();
+    }
+
+    @Override
+    public long charsConsumed() {
+        return chars.sum();
+    }
+
+    @Override
+    public long statesVisited() {
+        return visited.sum();
+    }
+
+    @Override
+    public long closureExpansions() {
+        return expansions.sum();
+    }
+
+    @Override
+    public long[] activeStates() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram[i].sum();
+        }
+        return counts;
+    }
+
+    // The counts of one matcher since they were last added
+    static final class Tally {
+        long chars;
+        long visited;
+        long expansions;
+        final long[] histogram = new long[BUCKETS];
+
+        // A step that left the given current states after adding the given closures
+        void step(int states, int closures) {
+            chars++;
+            visited += states;
+            expansions += closures;
+            histogram[Integer.SIZE - Integer.numberOfLeadingZeros(states)]++;
+        }
+
+        void clear() {
+            chars = 0;
+            visited = 0;
+            expansions = 0;
+            Arrays.fill(histogram, 0);
+        }
+    }
+}
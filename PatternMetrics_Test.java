@@ -0,0 +1,61 @@
+import java.util.*;
+import org.junit.*;
+
+public class PatternMetrics_Test {
+    @Test
+    public void tallyIsAdded() {
+        PatternMetrics metrics = new PatternMetrics();
+        PatternMetrics.Tally tally = new PatternMetrics.Tally();
+        tally.step(1, 1);
+        tally.step(3, 2);
+        tally.step(4, 0);
+        metrics.add(tally);
+
+        Assert.assertEquals(3, metrics.charsConsumed());
+        Assert.assertEquals(8, metrics.statesVisited());
+        Assert.assertEquals(3, metrics.closureExpansions());
+        // One step with 1 state, one with 2 or 3 states and one with 4 to 7 states
+        Assert.assertEquals(1, metrics.activeStates()[1]);
+        Assert.assertEquals(1, metrics.activeStates()[2]);
+        Assert.assertEquals(1, metrics.activeStates()[3]);
+
+        // The tally starts over
+        Assert.assertEquals(0, tally.chars);
+        metrics.add(tally);
+        Assert.assertEquals(3, metrics.charsConsumed());
+    }
+
+    @Test
+    public void engines() {
+        PatternMetrics metrics = new PatternMetrics();
+        metrics.recordMatch(MatchMetrics.Engine.PREFILTER);
+        metrics.recordMatch(MatchMetrics.Engine.NFA);
+        metrics.recordMatch(MatchMetrics.Engine.NFA);
+        Assert.assertEquals(3, metrics.matches());
+        Assert.assertEquals(2, metrics.matches(MatchMetrics.Engine.NFA));
+        Assert.assertEquals(0, metrics.matches(MatchMetrics.Engine.DFA));
+    }
+
+    @Test
+    public void patternMetrics() {
+        // Too long for the bit-parallel engine, so the NFA answers
+        Pattern pattern = Pattern.compileUncached("(a|b)*a(a|b){70}", 0);
+        pattern.matches("c");
+        pattern.matches("ab".repeat(50));
+
+        MatchMetrics metrics = pattern.metrics();
+        if (!PatternMetrics.ENABLED) {
+            // Metrics are off by default, and nothing is counted
+            Assert.assertEquals(0, metrics.matches());
+            Assert.assertEquals(0, metrics.charsConsumed());
+            return;
+        }
+
+        Assert.assertEquals(2, metrics.matches());
+        Assert.assertEquals(1, metrics.matches(MatchMetrics.Engine.PREFILTER));
+        Assert.assertEquals(1, metrics.matches(MatchMetrics.Engine.NFA));
+        Assert.assertEquals(100, metrics.charsConsumed());
+        Assert.assertEquals(100, Arrays.stream(metrics.activeStates()).sum());
+        Assert.assertTrue(metrics.statesVisited() >= metrics.closureExpansions());
+    }
+}
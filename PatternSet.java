@@ -0,0 +1,67 @@
+import java.util.*;
+
+public class PatternSet {
+    /*
+     * Many regular expressions merged into a single automaton
+     * Each pattern keeps its own tagged accept state, so one pass over
+     * the input tells which of the patterns match the whole input.
+     * The cost of a pass grows with the states that are active at once,
+     * not with the number of patterns.
+     *
+     * A pattern set is immutable and can be shared between threads.
+     */
+    private final List<String> regExes;
+    private final CompiledNFA program;
+    private final ThreadLocal<Matcher> matchers; // One reusable matcher per thread
+
+    public PatternSet(List<String> regExes) throws IllegalArgumentException {
+        this(Collections.unmodifiableList(new ArrayList<>(regExes)), compileAll(regExes));
+    }
+
+    // A set with a program that is already compiled, as AutomatonFile loads it
+    PatternSet(List<String> regExes, CompiledNFA program) {
+        this.regExes = regExes;
+        this.program = program;
+
+        matchers = ThreadLocal.withInitial(() -> new Matcher(program));
+    }
+
+    private static CompiledNFA compileAll(List<String> regExes) throws IllegalArgumentException {
+        List<NFA> automata = new ArrayList<>();
+        for (String regEx : regExes) {
+            automata.add(NFA.buildAutomaton(RegexParser.parse(regEx)));
+        }
+        return NFA.compileSet(automata);
+    }
+
+    public static PatternSet compile(String... regExes) throws IllegalArgumentException {
+        return new PatternSet(Arrays.asList(regExes));
+    }
+
+    // Number of patterns in the set
+    public int size() {
+        return regExes.size();
+    }
+
+    // The regular expression of the pattern with the index
+    public String regEx(int index) {
+        return regExes.get(index);
+    }
+
+    public CompiledNFA program() {
+        return program;
+    }
+
+    // Find the indices of the patterns that match the whole input
+    public BitSet matches(CharSequence input) {
+        Matcher matcher = matchers.get();
+        matcher.reset();
+        matcher.feed(input);
+        return matcher.acceptedPatterns();
+    }
+
+    // Check if any pattern matches the whole input
+    public boolean matchesAny(CharSequence input) {
+        return !matches(input).isEmpty();
+    }
+}
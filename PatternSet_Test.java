@@ -0,0 +1,58 @@
+import java.util.*;
+import org.junit.*;
+
+public class PatternSet_Test {
+    private static BitSet bits(int... indices) {
+        BitSet bits = new BitSet();
+        for (int index : indices) {
+            bits.set(index);
+        }
+        return bits;
+    }
+
+    @Test
+    public void reportsEveryMatchingPattern() {
+        PatternSet set = PatternSet.compile("ab*", "a(b|c)*", "abc", "", "x+");
+
+        Assert.assertEquals(bits(0, 1), set.matches("abbb"));
+        Assert.assertEquals(bits(1, 2), set.matches("abc"));
+        Assert.assertEquals(bits(0, 1), set.matches("a"));
+        Assert.assertEquals(bits(3), set.matches(""));
+        Assert.assertEquals(bits(4), set.matches("xxx"));
+        Assert.assertEquals(bits(), set.matches("ax"));
+        Assert.assertEquals(false, set.matchesAny("b"));
+    }
+
+    @Test
+    public void countedRepetitions() {
+        PatternSet set = PatternSet.compile("a{2,3}", "[ab]{3}", "b{2,}", "(a{2}b)+");
+
+        Assert.assertEquals(bits(0, 1), set.matches("aaa"));
+        Assert.assertEquals(bits(1, 3), set.matches("aab"));
+        Assert.assertEquals(bits(2), set.matches("bbbb"));
+        Assert.assertEquals(bits(3), set.matches("aabaab"));
+        Assert.assertEquals(bits(), set.matches("aaaa"));
+    }
+
+    @Test
+    public void sameResultsAsSeparatePatterns() {
+        String[] regExes = { "(a+|b)(a*|c)", "((a|b)*c)+d", "x(y|z)*x", "(ab|a)(bc|c)*", "a*" };
+        String[] inputs = { "", "a", "ab", "abc", "abcd", "bc", "xyzx", "aaa", "abcbc", "cd" };
+        PatternSet set = PatternSet.compile(regExes);
+
+        for (String input : inputs) {
+            BitSet expected = new BitSet();
+            for (int i = 0; i < regExes.length; i++) {
+                if (Pattern.compile(regExes[i]).matches(input)) {
+                    expected.set(i);
+                }
+            }
+            Assert.assertEquals(input, expected, set.matches(input));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPattern() {
+        PatternSet.compile("ab", "a||b");
+    }
+}
@@ -0,0 +1,198 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.*;
+
+public class Pattern_Test {
+    @Test
+    public void matchersAreIndependent() {
+        Pattern pattern = Pattern.compile("(a+|b)(a*|c)");
+        Matcher first = pattern.matcher();
+        Matcher second = pattern.matcher();
+
+        Assert.assertEquals(true, first.match("a"));
+        Assert.assertEquals(false, second.match("c"));
+        Assert.assertEquals(true, first.match("c"));
+        Assert.assertEquals(false, first.match("a"));
+
+        second.reset();
+        Assert.assertEquals(true, second.match("bc"));
+    }
+
+    @Test
+    public void sharedAcrossThreads() throws Exception {
+        final Pattern pattern = Pattern.compile("((a|b)*c)+d");
+        final String[] inputs = { "cd", "abcd", "ccacbcd", "abc", "d", "abcabcbbcd", "abcabcbbe" };
+        final boolean[] expected = { true, true, true, false, false, true, false };
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 32; t++) {
+                results.add(pool.submit(() -> {
+                    for (int round = 0; round < 1000; round++) {
+                        for (int i = 0; i < inputs.length; i++) {
+                            if (pattern.matches(inputs[i]) != expected[i]) {
+                                return false;
+                            }
+                        }
+                    }
+                    return true;
+                }));
+            }
+
+            for (Future<Boolean> result : results) {
+                Assert.assertEquals(true, result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void feedInChunks() throws IOException {
+        Pattern pattern = Pattern.compile("x(ab|c)*y");
+        Matcher matcher = pattern.matcher();
+
+        Assert.assertEquals(true, matcher.feed("xa"));
+        Assert.assertEquals(false, matcher.isAcceptable());
+        Assert.assertEquals(true, matcher.feed(new char[] { '-', 'b', 'c', 'a', '-' }, 1, 3));
+        Assert.assertEquals(true, matcher.feed(CharBuffer.wrap("by")));
+        Assert.assertEquals(true, matcher.isAcceptable());
+
+        matcher.reset();
+        Assert.assertEquals(true, matcher.feed(new StringReader("x" + "ab".repeat(10000) + "cy")));
+        Assert.assertEquals(true, matcher.isAcceptable());
+    }
+
+    @Test
+    public void deadStopsEarly() throws IOException {
+        Pattern pattern = Pattern.compile("ab*");
+        Matcher matcher = pattern.matcher();
+
+        CharBuffer buffer = CharBuffer.wrap("abbcbbb");
+        Assert.assertEquals(false, matcher.feed(buffer));
+        Assert.assertEquals(true, matcher.isDead());
+        Assert.assertEquals(4, buffer.position());
+
+        // The reader is not read to the end once the matcher is dead
+        matcher.reset();
+        StringReader reader = new StringReader("c" + "b".repeat(100000));
+        Assert.assertEquals(false, matcher.feed(reader));
+        Assert.assertEquals(false, matcher.isAcceptable());
+        Assert.assertNotEquals(-1, reader.read());
+    }
+
+    private static List<Match> findAll(String regEx, String input) {
+        List<Match> matches = new ArrayList<>();
+        for (Match match : Pattern.compile(regEx).findAll(input)) {
+            matches.add(match);
+        }
+        return matches;
+    }
+
+    @Test
+    public void findLeftmostLongest() {
+        Assert.assertEquals(new Match(3, 7), Pattern.compile("ab+").find("xyzabbbab"));
+        Assert.assertEquals(new Match(1, 4), Pattern.compile("a|abc|bcde").find("xabcdef"));
+        Assert.assertEquals(new Match(0, 0), Pattern.compile("a*").find("bbb"));
+        Assert.assertEquals(null, Pattern.compile("abc").find("ababab"));
+        Assert.assertEquals(new Match(2, 7), Pattern.compile("(ab|a)(bc|c)*").find("xxabcbcbx"));
+    }
+
+    @Test
+    public void findAllMatches() {
+        Assert.assertEquals(Arrays.asList(new Match(0, 2), new Match(3, 6), new Match(8, 9)),
+                findAll("ab*", "abxabbxxa"));
+        Assert.assertEquals(Arrays.asList(new Match(0, 0), new Match(1, 3), new Match(3, 3), new Match(4, 5),
+                new Match(5, 5)), findAll("a*", "baaba"));
+        Assert.assertEquals(Collections.emptyList(), findAll("xy", "yyxx"));
+    }
+
+    @Test(timeout = 10000)
+    public void findAllIsLinear() {
+        // Every search for a*b runs to the end of the input, and the next search starts one char later
+        String input = "a".repeat(100000);
+        List<Match> matches = findAll("a|a*b", input);
+        Assert.assertEquals(input.length(), matches.size());
+        Assert.assertEquals(new Match(99999, 100000), matches.get(99999));
+        Assert.assertEquals(Collections.singletonList(new Match(0, 100001)), findAll("a|a*b", input + "b"));
+    }
+
+    @Test
+    public void findAllSameAsRepeatedFind() {
+        String[] patterns = { "a|a*b", "a*", "(ab|a)(bc|c)*", "b|(a|b)*c", "a(b|c)*|bc*", "(a|b)*abb|b", "ab*|b*c" };
+        Random random = new Random(42);
+        for (String regEx : patterns) {
+            Pattern pattern = Pattern.compile(regEx);
+            for (int n = 0; n < 200; n++) {
+                StringBuilder input = new StringBuilder();
+                for (int i = random.nextInt(30); i > 0; i--) {
+                    input.append((char) ('a' + random.nextInt(3)));
+                }
+
+                // A new searcher for every match knows nothing from the searches before
+                List<Match> expected = new ArrayList<>();
+                int from = 0;
+                for (Match match; from <= input.length()
+                        && (match = new Searcher(pattern.program(), pattern.prefilter()).find(input, from)) != null; ) {
+                    expected.add(match);
+                    from = match.end() == match.start() ? match.end() + 1 : match.end();
+                }
+                Assert.assertEquals(regEx + " on " + input, expected, findAll(regEx, input.toString()));
+            }
+        }
+    }
+
+    @Test
+    public void findSkipsToStartChars() {
+        // No prefix, so the search skips to the chars that a match starts with
+        Assert.assertEquals(Arrays.asList(new Match(4, 6), new Match(9, 10)), findAll("[xy]z*", "abcdxzabcy"));
+        Assert.assertEquals(Arrays.asList(new Match(3, 5), new Match(7, 9)), findAll("(a|b)+", "xyzabxyba"));
+        Assert.assertEquals(new Match(2, 4), Pattern.compile("(ab|a)(bc|c)*").find(new StringBuilder("xxabxx")));
+        Assert.assertEquals(null, Pattern.compile("[xy]z").find(new StringBuilder("zzzzx")));
+    }
+
+    @Test
+    public void matchUtf8Bytes() {
+        Pattern pattern = Pattern.compile("(é|€|a)+ü");
+        String[] inputs = { "aü", "é€aü", "€€€ü", "ü", "eü", "é€a", "aé€ü" };
+        for (String input : inputs) {
+            byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+            Assert.assertEquals(input, pattern.matches(input), pattern.matchesUtf8(bytes, 0, bytes.length));
+            Assert.assertEquals(input, pattern.matches(input), pattern.matchesUtf8(ByteBuffer.wrap(bytes)));
+        }
+
+        // Latin-1 bytes are not UTF-8
+        byte[] latin1 = "aü".getBytes(StandardCharsets.ISO_8859_1);
+        Assert.assertEquals(false, pattern.matchesUtf8(latin1, 0, latin1.length));
+
+        // Classes with chars of every encoding length
+        Pattern classes = Pattern.compile("[^a]€.[ß-ü]");
+        String[] classInputs = { "b€xü", "é€€ß", "a€xü", "b€xz", "€€\u07ffà", "b€\nü", "\uffff€ßß" };
+        for (String input : classInputs) {
+            byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+            Assert.assertEquals(input, classes.matches(input), classes.matchesUtf8(bytes, 0, bytes.length));
+        }
+
+        // Supplementary chars are a surrogate pair in a String and one 4 byte sequence in UTF-8
+        String[] supplementary = { ".*", "[^x]*", "\\S+", "a(\uD83D\uDE00)+b", "x(\uD83D\uDE00|\uD83D\uDE01)y",
+                "x.y", "x..y" };
+        String[] emojiInputs = { "x\uD83D\uDE00y", "x\uD83D\uDE01y", "a\uD83D\uDE00\uD83D\uDE00b", "a\uD83D\uDE01b",
+                "\uD83E\uDD14", "\uDBFF\uDFFF", "\uD800\uDC00x", "ab" };
+        for (String regEx : supplementary) {
+            Pattern supplementaryPattern = Pattern.compile(regEx);
+            for (String input : emojiInputs) {
+                byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+                Assert.assertEquals(regEx + " on " + input, supplementaryPattern.matches(input),
+                        supplementaryPattern.matchesUtf8(bytes, 0, bytes.length));
+            }
+        }
+
+        // A slice of a larger buffer
+        byte[] padded = "xxé€üyy".getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals(true, pattern.matchesUtf8(padded, 2, padded.length - 4));
+    }
+}
@@ -0,0 +1,293 @@
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public final class Prefilter {
+    /*
+     * The literals that every match of a regular expression must contain
+     * Every string that the regular expression matches starts with the prefix,
+     * ends with the suffix, contains the factor and is at least minLength chars long.
+     * An input without them is rejected with a substring search,
+     * before the automaton even sees its first char.
+     * If the regular expression matches one string only, that string is exact,
+     * and matching is a plain string comparison.
+     *
+     * The literals are found by evaluating the postfix form over a stack,
+     * the same way NFA.buildAutomaton() assembles the building blocks.
+     */
+    public static final Prefilter NONE = new Prefilter(new Literals(null, "", "", "", 0));
+
+    private final String exact; // The only string that matches, null if there are more
+    private final String prefix;
+    private final String suffix;
+    private final String factor; // Empty if it adds nothing to the prefix and the suffix
+    private final int minLength;
+
+    // The UTF-8 encodings of the literals, empty if a literal holds a surrogate
+    private final byte[] prefixBytes;
+    private final byte[] suffixBytes;
+    private final byte[] factorBytes;
+
+    private Prefilter(Literals literals) {
+        exact = literals.exact;
+        prefix = literals.prefix;
+        suffix = literals.suffix;
+        factor = prefix.contains(literals.factor) || suffix.contains(literals.factor) ? "" : literals.factor;
+        minLength = literals.minLength;
+        prefixBytes = utf8(prefix);
+        suffixBytes = utf8(suffix);
+        factorBytes = utf8(factor);
+    }
+
+    // Find the required literals of the postfix form of a regular expression
+    public static Prefilter of(String postfixExp) {
+        // Special case: empty regular expression
+        if (postfixExp.length() == 0) {
+            return new Prefilter(Literals.of(""));
+        }
+
+        Stack<Literals> blocks = new Stack<>();
+        for (int i = 0; i < postfixExp.length(); i++) {
+            final char curr = postfixExp.charAt(i);
+
+            Literals block = null;
+            if (curr == '*') {
+                block = blocks.pop().repetition();
+            } else if (curr == '+') {
+                block = blocks.pop().oneOrMore();
+            } else if (curr == '|') {
+                Literals right = blocks.pop();
+                Literals left = blocks.pop();
+                block = left.union(right);
+            } else if (curr == '.') {
+                Literals right = blocks.pop();
+                Literals left = blocks.pop();
+                block = left.concat(right);
+            } else if (curr == '{') {
+                block = blocks.pop().repeat(postfixExp.charAt(i + 1), postfixExp.charAt(i + 2));
+                i += 2;
+            } else if (curr == '\\') {
+                block = Literals.of(Character.toString(postfixExp.charAt(++i)));
+            } else if (curr == '[') {
+                // A class of one char is written as the char, so a class is no literal
+                block = new Literals(null, "", "", "", 1);
+                i += 1 + 2 * postfixExp.charAt(i + 1);
+            } else {
+                block = Literals.of(Character.toString(curr));
+            }
+
+            blocks.push(block);
+        }
+
+        return new Prefilter(blocks.pop());
+    }
+
+    public String exact() {
+        return exact;
+    }
+
+    public String prefix() {
+        return prefix;
+    }
+
+    public String suffix() {
+        return suffix;
+    }
+
+    public String factor() {
+        return factor;
+    }
+
+    // Check if the input cannot match, because it lacks a required literal
+    // The checks of the prefix and the suffix cost a few comparisons,
+    // and only a factor that is neither of them needs a substring search
+    public boolean rejects(CharSequence input) {
+        final int length = input.length();
+        if (length < minLength || !startsWith(input, 0, prefix) || !startsWith(input, length - suffix.length(), suffix)) {
+            return true;
+        }
+
+        return !factor.isEmpty() && indexOf(input, factor, 0) == -1;
+    }
+
+    // Check if the UTF-8 bytes buffer[from] ... buffer[to - 1] cannot match
+    // A char takes at least one byte, so the bytes are never fewer than the chars
+    public boolean rejectsUtf8(ByteBuffer buffer, int from, int to) {
+        if (to - from < minLength || !startsWith(buffer, from, to, prefixBytes)
+                || !startsWith(buffer, to - suffixBytes.length, to, suffixBytes)) {
+            return true;
+        }
+
+        return factorBytes.length > 0 && indexOf(buffer, from, to, factorBytes) == -1;
+    }
+
+    // The first position at or after from where a match can start, -1 if there is none
+    // A match starts with the prefix, so it can only start where the prefix occurs
+    public int nextCandidate(CharSequence input, int from) {
+        return prefix.isEmpty() ? from : indexOf(input, prefix, from);
+    }
+
+    // Check if no match can lie within input[from] ... input[input.length() - 1]
+    public boolean rejectsFrom(CharSequence input, int from) {
+        final String longest = longest(longest(prefix, suffix), factor);
+        return !longest.isEmpty() && indexOf(input, longest, from) == -1;
+    }
+
+    private static boolean startsWith(CharSequence input, int offset, String literal) {
+        if (offset < 0 || offset + literal.length() > input.length()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (input.charAt(offset + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int offset, int to, byte[] literal) {
+        if (offset < 0 || offset + literal.length > to) {
+            return false;
+        }
+        for (int i = 0; i < literal.length; i++) {
+            if (buffer.get(offset + i) != literal[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Substring search, Strings use the intrinsic of String.indexOf()
+    static int indexOf(CharSequence input, String literal, int from) {
+        if (input instanceof String) {
+            return ((String) input).indexOf(literal, from);
+        }
+
+        final char first = literal.charAt(0);
+        final int last = input.length() - literal.length();
+        for (int i = Math.max(from, 0); i <= last; i++) {
+            if (input.charAt(i) == first && startsWith(input, i, literal)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, int to, byte[] literal) {
+        // The first byte is found a word or a vector at a time, and only its occurrences are compared
+        final int last = to - literal.length;
+        for (int i = ByteScanner.indexOf(buffer, from, to, literal[0]); i != -1 && i <= last;
+                i = ByteScanner.indexOf(buffer, i + 1, to, literal[0])) {
+            if (startsWith(buffer, i, to, literal)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // A surrogate pair is one 4 byte sequence, as in CompiledNFA.toUtf8(), but a lone surrogate
+    // has no encoding in valid UTF-8, and String.getBytes() would replace it with '?'
+    private static byte[] utf8(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            final char c = literal.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < literal.length()
+                    && Character.isLowSurrogate(literal.charAt(i + 1))) {
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                return new byte[0];
+            }
+        }
+        return literal.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String longest(String a, String b) {
+        return b.length() > a.length() ? b : a;
+    }
+
+    // The literals of a subexpression
+    private static final class Literals {
+        final String exact;
+        final String prefix;
+        final String suffix;
+        final String factor; // The longest required substring that is known
+        final int minLength;
+
+        Literals(String exact, String prefix, String suffix, String factor, int minLength) {
+            this.exact = exact;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.factor = factor;
+            this.minLength = minLength;
+        }
+
+        static Literals of(String literal) {
+            return new Literals(literal, literal, literal, literal, literal.length());
+        }
+
+        // The suffix of the first part and the prefix of the second part meet in the middle
+        Literals concat(Literals second) {
+            if (exact != null && second.exact != null) {
+                return of(exact + second.exact);
+            }
+
+            final String middle = suffix + second.prefix;
+            return new Literals(null,
+                    exact != null ? exact + second.prefix : prefix,
+                    second.exact != null ? suffix + second.exact : second.suffix,
+                    longest(longest(factor, second.factor), middle),
+                    minLength + second.minLength);
+        }
+
+        // Only what both alternatives require is required
+        Literals union(Literals second) {
+            if (exact != null && exact.equals(second.exact)) {
+                return this;
+            }
+
+            final String commonPrefix = commonPrefix(prefix, second.prefix);
+            final String commonSuffix = commonSuffix(suffix, second.suffix);
+            final String commonFactor = factor.equals(second.factor) ? factor : "";
+            return new Literals(null, commonPrefix, commonSuffix,
+                    longest(longest(commonPrefix, commonSuffix), commonFactor),
+                    Math.min(minLength, second.minLength));
+        }
+
+        // Zero repetitions match the empty string, which requires nothing
+        Literals repetition() {
+            return "".equals(exact) ? this : new Literals(null, "", "", "", 0);
+        }
+
+        // Every match starts with a match of the repeated part and ends with one
+        Literals oneOrMore() {
+            return "".equals(exact) ? this : new Literals(null, prefix, suffix, factor, minLength);
+        }
+
+        // At least one copy means that the literals of one copy are required
+        Literals repeat(int min, int max) {
+            if (exact != null && min == max) {
+                return of(exact.repeat(min));
+            }
+            if (min == 0) {
+                return repetition();
+            }
+            return new Literals(null, prefix, suffix, factor, minLength * min);
+        }
+
+        private static String commonPrefix(String a, String b) {
+            int i = 0;
+            while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i)) {
+                i++;
+            }
+            return a.substring(0, i);
+        }
+
+        private static String commonSuffix(String a, String b) {
+            int i = 0;
+            while (i < a.length() && i < b.length()
+                    && a.charAt(a.length() - 1 - i) == b.charAt(b.length() - 1 - i)) {
+                i++;
+            }
+            return a.substring(a.length() - i);
+        }
+    }
+}
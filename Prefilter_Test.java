@@ -0,0 +1,75 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import org.junit.*;
+
+public class Prefilter_Test {
+    private static Prefilter of(String regEx) {
+        return Prefilter.of(RegexParser.parse(regEx));
+    }
+
+    @Test
+    public void requiredLiterals() {
+        Prefilter prefilter = of("error(a|b)*");
+        Assert.assertNull(prefilter.exact());
+        Assert.assertEquals("error", prefilter.prefix());
+        Assert.assertEquals("", prefilter.suffix());
+
+        prefilter = of("(ab|a)*x(yzw|qzw)[a-c]+e");
+        Assert.assertEquals("", prefilter.prefix());
+        Assert.assertEquals("e", prefilter.suffix());
+        Assert.assertEquals("zw", prefilter.factor());
+
+        prefilter = of("(a|b)*timeout(s|ms)*(x|y)");
+        Assert.assertEquals("timeout", prefilter.factor());
+
+        Assert.assertEquals("abc", of("abc").exact());
+        Assert.assertEquals("abc", of("a(b|b)c").exact());
+        Assert.assertEquals("", of("").exact());
+    }
+
+    @Test
+    public void rejectInputs() {
+        Prefilter prefilter = of("(a|b)*timeout(s|ms)*x");
+        Assert.assertTrue(prefilter.rejects("abtimeoutsy"));
+        Assert.assertTrue(prefilter.rejects("abtimeoux"));
+        Assert.assertFalse(prefilter.rejects("abtimeoutmsx"));
+        Assert.assertFalse(prefilter.rejects(new StringBuilder("qqtimeoutqqx")));
+
+        byte[] bytes = "ätimeoutx".getBytes(StandardCharsets.UTF_8);
+        Assert.assertFalse(prefilter.rejectsUtf8(ByteBuffer.wrap(bytes), 0, bytes.length));
+        Assert.assertTrue(prefilter.rejectsUtf8(ByteBuffer.wrap(bytes), 0, bytes.length - 1));
+
+        // A surrogate pair is one 4 byte sequence, and a literal that splits one is not checked
+        prefilter = of("(a|b)*\uD83D\uDE00x");
+        bytes = "ab\uD83D\uDE00x".getBytes(StandardCharsets.UTF_8);
+        Assert.assertFalse(prefilter.rejectsUtf8(ByteBuffer.wrap(bytes), 0, bytes.length));
+        bytes = "ab\uD83D\uDE01x".getBytes(StandardCharsets.UTF_8);
+        Assert.assertTrue(prefilter.rejectsUtf8(ByteBuffer.wrap(bytes), 0, bytes.length));
+        prefilter = of("(a|b)*\uD83D[\uDE00-\uDE4F]");
+        Assert.assertFalse(prefilter.rejectsUtf8(ByteBuffer.wrap(bytes), 0, bytes.length - 1));
+    }
+
+    @Test
+    public void sameResultsAsNFA() {
+        String[] patterns = { "error(a|b)*", "(a|b)*ab+c(d|e)", "x(yz)+|xw", "(abc)*", "a*", "(a|b)(a|b)", "ab|ab" };
+        String[] inputs = { "", "a", "ab", "abbce", "error", "errorab", "errbr", "xyzyz", "xw", "x", "abcabc",
+                "aaa", "ba", "abab", };
+        for (String regEx : patterns) {
+            NFA nfa = NFA.buildAutomaton(RegexParser.parse(regEx));
+            Pattern pattern = Pattern.compile(regEx);
+            for (String input : inputs) {
+                nfa.initialize();
+                Assert.assertEquals(regEx + " on " + input, nfa.match(input), pattern.matches(input));
+
+                // The search skips ahead but finds the same matches
+                final String padded = "qq" + input + "qq" + input;
+                List<Match> expected = new ArrayList<>();
+                new Searcher(pattern.program()).findAll(padded).forEachRemaining(expected::add);
+                List<Match> actual = new ArrayList<>();
+                new Searcher(pattern.program(), pattern.prefilter()).findAll(padded).forEachRemaining(actual::add);
+                Assert.assertEquals(regEx + " in " + padded, expected, actual);
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+import java.util.*;
+
+public final class RegexNode {
+    /*
+     * A node of the syntax tree of a regular expression
+     * Concatenations and unions hold any number of children, so a long
+     * pattern is a wide tree rather than a deep one.
+     *
+     * Nested concatenations and unions are merged into one node.
+     * The factories keep the empty regular expression out of the tree:
+     * it disappears from concatenations, an empty alternative makes the
+     * union optional, and repeating it changes nothing. So EMPTY is only
+     * ever the whole tree, and the postfix form never needs a symbol for it.
+     *
+     * Every traversal uses an explicit stack, so deeply nested
+     * regular expressions cannot overflow the call stack.
+     */
+    public enum Kind {
+        EMPTY, CHARS, CONCAT, UNION, STAR, PLUS, REPEAT
+    }
+
+    private final Kind kind;
+    private final int position; // The index in the regular expression where the node starts
+    private final char[] ranges; // The chars of a CHARS node as lo, hi pairs
+    private final List<RegexNode> children;
+    private final int min; // The bounds of a REPEAT node
+    private final int max;
+
+    private RegexNode(Kind kind, int position, char[] ranges, List<RegexNode> children, int min, int max) {
+        this.kind = kind;
+        this.position = position;
+        this.ranges = ranges;
+        this.children = children;
+        this.min = min;
+        this.max = max;
+    }
+
+    public static RegexNode empty(int position) {
+        return new RegexNode(Kind.EMPTY, position, null, Collections.emptyList(), 0, 0);
+    }
+
+    public static RegexNode chars(char[] ranges, int position) {
+        return new RegexNode(Kind.CHARS, position, ranges, Collections.emptyList(), 0, 0);
+    }
+
+    public static RegexNode concat(List<RegexNode> parts, int position) {
+        List<RegexNode> children = new ArrayList<>();
+        for (RegexNode part : parts) {
+            if (part.kind == Kind.CONCAT) {
+                children.addAll(part.children);
+            } else if (part.kind != Kind.EMPTY) {
+                children.add(part);
+            }
+        }
+
+        if (children.isEmpty()) {
+            return empty(position);
+        }
+        if (children.size() == 1) {
+            return children.get(0);
+        }
+        return new RegexNode(Kind.CONCAT, position, null, children, 0, 0);
+    }
+
+    public static RegexNode union(List<RegexNode> alternatives, int position) {
+        List<RegexNode> children = new ArrayList<>();
+        boolean optional = false;
+        for (RegexNode alternative : alternatives) {
+            if (alternative.kind == Kind.EMPTY) {
+                optional = true;
+            } else if (alternative.kind == Kind.UNION) {
+                children.addAll(alternative.children);
+            } else {
+                children.add(alternative);
+            }
+        }
+
+        if (children.isEmpty()) {
+            return empty(position);
+        }
+        RegexNode union = children.size() == 1 ? children.get(0)
+                : new RegexNode(Kind.UNION, position, null, children, 0, 0);
+        return optional ? repeat(union, 0, 1) : union;
+    }
+
+    public static RegexNode star(RegexNode child) {
+        return unary(Kind.STAR, child, 0, 0);
+    }
+
+    public static RegexNode plus(RegexNode child) {
+        return unary(Kind.PLUS, child, 0, 0);
+    }
+
+    // max is RegexParser.UNBOUNDED for "{min,}"
+    public static RegexNode repeat(RegexNode child, int min, int max) {
+        return unary(Kind.REPEAT, child, min, max);
+    }
+
+    private static RegexNode unary(Kind kind, RegexNode child, int min, int max) {
+        if (child.kind == Kind.EMPTY) {
+            return child;
+        }
+        return new RegexNode(kind, child.position, null, Collections.singletonList(child), min, max);
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public char[] ranges() {
+        return ranges.clone();
+    }
+
+    public List<RegexNode> children() {
+        return Collections.unmodifiableList(children);
+    }
+
+    public int min() {
+        return min;
+    }
+
+    public int max() {
+        return max;
+    }
+
+    /*
+     * The postfix form that NFA.buildAutomaton() reads
+     * The children of a concatenation are joined by '.' after every child
+     * but the first. The alternatives of a union are joined into a balanced
+     * tree instead, so that the epsilon closures of a long allow-list like
+     * "w0|w1|...|w19999" hold O(n log n) states in total rather than O(n^2).
+     */
+    public String toPostfix() {
+        StringBuilder out = new StringBuilder();
+
+        // Every frame is a node and the number of its children that are done
+        Deque<RegexNode> nodes = new ArrayDeque<>();
+        Deque<Integer> done = new ArrayDeque<>();
+        nodes.push(this);
+        done.push(0);
+        while (!nodes.isEmpty()) {
+            RegexNode node = nodes.peek();
+            final int count = done.pop();
+
+            if (count > 1 && node.kind == Kind.CONCAT) {
+                out.append('.');
+            } else if (count > 0 && node.kind == Kind.UNION) {
+                // Join the alternatives like a binary counter, two subtrees of equal size at a time
+                out.append("|".repeat(Integer.numberOfTrailingZeros(count)));
+                if (count == node.children.size()) {
+                    out.append("|".repeat(Integer.bitCount(count) - 1));
+                }
+            }
+
+            if (count < node.children.size()) {
+                done.push(count + 1);
+                nodes.push(node.children.get(count));
+                done.push(0);
+                continue;
+            }
+
+            nodes.pop();
+            switch (node.kind) {
+            case CHARS:
+                appendOperand(out, node.ranges);
+                break;
+            case STAR:
+                out.append('*');
+                break;
+            case PLUS:
+                out.append('+');
+                break;
+            case REPEAT:
+                out.append('{').append((char) node.min).append((char) node.max);
+                break;
+            default:
+                break;
+            }
+        }
+
+        return out.toString();
+    }
+
+    // A single char, escaped if it has a special meaning in the postfix form,
+    // or a character class as '[', the number of intervals and the intervals
+    private static void appendOperand(StringBuilder out, char[] ranges) {
+        if (ranges.length == 2 && ranges[0] == ranges[1]) {
+            if (".|*+\\[{".indexOf(ranges[0]) != -1) {
+                out.append('\\');
+            }
+            out.append(ranges[0]);
+        } else {
+            out.append('[').append((char) (ranges.length / 2)).append(ranges);
+        }
+    }
+}
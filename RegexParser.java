@@ -1,11 +1,20 @@
+import java.io.*;
+import java.nio.file.*;
 import java.util.*;
 
 public class RegexParser {
+    // The largest bound of a counted repetition, every bound is a char of the postfix form
+    public static final int MAX_REPEAT = Character.MAX_VALUE - 1;
+
+    // The upper bound of "{m,}" in the postfix form
+    static final char UNBOUNDED = Character.MAX_VALUE;
+
     /*
      * Only need to create a Scanner that's tied to System.in one time
      * and use it for all console input.
      */
     private final Scanner userInput;
+    private String input; // The regular expression as it was read
     private String regEx;
     private NFA nfa;
 
@@ -28,173 +37,326 @@ public class RegexParser {
 
     // Behaves like setter for the "regEx" field
     public void readRegEx() throws IllegalArgumentException {
-        String regEx = userInput.nextLine();
-
-        // Invalid regular expression would throw an exception
-        if (isValid(regEx) == false) {
-            throw new IllegalArgumentException("Invalid regular expression");
-        }
+        this.input = userInput.nextLine();
+        this.regEx = parse(input);
+    }
 
-        // Transform the regular expression to postfix
-        regEx = insertConcatOperator(regEx);
-        regEx = toPostfix(regEx);
+    // Check the regular expression and transform it to postfix
+    public static String parse(String regEx) throws IllegalArgumentException {
+        return RegexSimplifier.simplify(parseTree(regEx)).toPostfix();
+    }
 
-        this.regEx = regEx;
+    // The number of states as parsed, after simplification and without the epsilon states
+    public static String stateReport(String regEx) throws IllegalArgumentException {
+        final int parsed = NFA.buildAutomaton(parseTree(regEx).toPostfix()).stateCount();
+        NFA simplified = NFA.buildAutomaton(parse(regEx));
+        return "States: " + parsed + " parsed, " + simplified.stateCount() + " simplified, "
+                + simplified.getProgram().stateCount() + " without epsilon states";
     }
 
     /*
+     * Parse the regular expression into a syntax tree in a single pass
      * a regular expression can consist of
-     * lower and upper case letters,
-     * numbers,
-     * spaces,
+     * any chars, '.' for any char but a line break,
+     * escaped chars, "\c" is the char c itself,
+     * and "\d", "\w", "\s" and their upper case negations are the usual classes,
+     * character classes "[...]" with ranges like "a-z", negated by a leading '^',
      * the alternation operator '|'
      * the Kleene star '*'
      * the Kleene plus '+'
+     * counted repetitions "{m}", "{m,}" and "{m,n}"
      * brackets '(', ')'
+     *
+     * A '[' without a closing ']' or with nothing inside, like "[]", is the char itself,
+     * and so is a '{' that starts no counted repetition.
+     *
+     * The open groups are kept on an explicit stack, so nesting depth is
+     * only limited by memory. An invalid regular expression throws
+     * a RegexSyntaxException with the index of the offending char.
      */
-    private static boolean isValid(String regEx) {
-        // Special case: empty regular expression
-        if (regEx.length() == 0) {
-            return true;
+    public static RegexNode parseTree(String regEx) throws RegexSyntaxException {
+        Deque<Group> groups = new ArrayDeque<>();
+        Group curr = new Group(-1);
+
+        int i = 0;
+        while (i < regEx.length()) {
+            final char c = regEx.charAt(i);
+            if (c == '(') {
+                groups.push(curr);
+                curr = new Group(i);
+                i++;
+            } else if (c == ')') {
+                if (groups.isEmpty()) {
+                    throw new RegexSyntaxException("Unmatched closing ')'", regEx, i);
+                }
+                RegexNode group = curr.close(regEx, i);
+                curr = groups.pop();
+                curr.add(group);
+                i++;
+            } else if (c == '|') {
+                curr.alternate(regEx, i);
+                i++;
+            } else if (c == '*' || c == '+') {
+                curr.checkQuantifier(regEx, i);
+                curr.quantify(c == '*' ? RegexNode.star(curr.last()) : RegexNode.plus(curr.last()));
+                i++;
+            } else if (c == '{' && repeatEnd(regEx, i) != -1) {
+                final int end = repeatEnd(regEx, i);
+                curr.checkQuantifier(regEx, i);
+                final int[] bounds = parseRepeat(regEx, i, end);
+                curr.quantify(RegexNode.repeat(curr.last(), bounds[0], bounds[1]));
+                i = end + 1;
+            } else if (c == '.') {
+                curr.add(RegexNode.chars(CharClass.ANY, i));
+                i++;
+            } else if (c == '\\' && i + 1 < regEx.length()) {
+                curr.add(RegexNode.chars(escapeOf(regEx.charAt(i + 1)), i));
+                i += 2;
+            } else if (c == '[' && classEnd(regEx, i) != -1) {
+                final int end = classEnd(regEx, i);
+                curr.add(RegexNode.chars(parseClass(regEx, i + 1, end), i));
+                i = end + 1;
+            } else {
+                curr.add(RegexNode.chars(CharClass.of(c), i));
+                i++;
+            }
         }
 
-        // Starts with an operator
-        final char first = regEx.charAt(0);
-        if (first == '*' || first == '+' || first == '|') {
-            return false;
+        if (!groups.isEmpty()) {
+            throw new RegexSyntaxException("Unclosed group", regEx, curr.open);
         }
+        return curr.close(regEx, regEx.length());
+    }
 
-        // Ends with alternation
-        final char last = regEx.charAt(regEx.length() - 1);
-        if (last == '|') {
-            return false;
+    // A group that is being parsed, the whole regular expression is a group too
+    private static final class Group {
+        final int open; // The index of the '(', -1 for the whole regular expression
+        final List<RegexNode> alternatives = new ArrayList<>();
+        List<RegexNode> parts = new ArrayList<>(); // The concatenation of the current alternative
+        boolean quantified; // The last part has a quantifier already
+
+        Group(int open) {
+            this.open = open;
         }
 
-        for (int i = 1; i < regEx.length(); i++) {
-            final char curr = regEx.charAt(i);
-            final char prev = regEx.charAt(i - 1);
+        void add(RegexNode part) {
+            parts.add(part);
+            quantified = false;
+        }
 
-            // Operators are preceded by '('
-            if ((curr == '*' || curr == '+' || curr == '|') && prev == '(') {
-                return false;
-            }
+        RegexNode last() {
+            return parts.get(parts.size() - 1);
+        }
 
-            // Two consecutive kleene star or kleene plus
-            if ((curr == '*' || curr == '+') && (prev == '*' || prev == '+')) {
-                return false;
+        // A quantifier needs an operand, and an operand takes one quantifier only
+        void checkQuantifier(String regEx, int index) throws RegexSyntaxException {
+            if (parts.isEmpty()) {
+                throw new RegexSyntaxException("Dangling quantifier", regEx, index);
             }
-
-            // Two consecutive alternation symbol
-            if (curr == '|' && prev == '|') {
-                return false;
+            if (quantified) {
+                throw new RegexSyntaxException("Repeated quantifier", regEx, index);
             }
+        }
 
-            // Alternation followed by kleene star, kleene plus, or right bracket
-            if (prev == '|' && (curr == ')' || curr == '*' || curr == '+')) {
-                return false;
-            }
+        void quantify(RegexNode part) {
+            parts.set(parts.size() - 1, part);
+            quantified = true;
         }
 
-        // Invalid brackets
-        int hanging = 0; // The number of unclosed left brackets
-        for (int i = 0; i < regEx.length(); i++) {
-            final char curr = regEx.charAt(i);
-            if (curr == '(') {
-                hanging++;
-            } else if (curr == ')') {
-                if (hanging == 0) { // Unclosed right brackets
-                    return false;
-                }
-                hanging--;
+        // An alternative ends at '|', ')' or the end of the regular expression
+        void alternate(String regEx, int index) throws RegexSyntaxException {
+            if (parts.isEmpty()) {
+                throw new RegexSyntaxException("Empty alternative", regEx, index);
             }
+            alternatives.add(RegexNode.concat(parts, parts.get(0).position()));
+            parts = new ArrayList<>();
+            quantified = false;
         }
 
-        // Unclosed left brackets
-        if (hanging != 0) {
-            return false;
+        // "()" and the empty regular expression are fine, only an empty alternative is not
+        RegexNode close(String regEx, int index) throws RegexSyntaxException {
+            if (alternatives.isEmpty()) {
+                return RegexNode.concat(parts, open + 1);
+            }
+            alternate(regEx, index);
+            return RegexNode.union(alternatives, open + 1);
         }
-
-        return true;
     }
 
-    // Insert the dot symbol '.' for concatenation
-    private static String insertConcatOperator(String regex) {
-        String output = new String();
-
-        for (int i = 0; i < regex.length(); i++) {
-            final char curr = regex.charAt(i);
-            output += curr;
-
-            if (curr == '(' || curr == '|') {
-                continue;
-            }
-
-            if (i < regex.length() - 1) {
-                final char next = regex.charAt(i + 1);
+    // The index of the '}' that closes the counted repetition opened at the index, -1 if there is none
+    // Bounds are ASCII digits, and a bound with the digits of another script is refused
+    private static int repeatEnd(String regEx, int open) throws RegexSyntaxException {
+        int i = digitsEnd(regEx, open + 1);
+        if (i == open + 1) {
+            return -1;
+        }
 
-                if (next == '*' || next == '+' || next == '|' || next == ')') {
-                    continue;
-                }
+        if (i < regEx.length() && regEx.charAt(i) == ',') {
+            i = digitsEnd(regEx, i + 1);
+        }
+        if (i == regEx.length() || regEx.charAt(i) != '}') {
+            return -1;
+        }
 
-                output += '.';
+        for (int j = open + 1; j < i; j++) {
+            final char c = regEx.charAt(j);
+            if (c != ',' && (c < '0' || c > '9')) {
+                throw new RegexSyntaxException("Repetition bound with the non-ASCII digit '" + c + "'", regEx, j);
             }
         }
-
-        return output;
+        return i;
     }
 
-    // Convert regular expression from infix to postfix
-    private static String toPostfix(String exp) {
-        // The precedence of operators
-        Map<Character, Integer> pre = new HashMap<>();
-        pre.put('|', 0);
-        pre.put('.', 1);
-        pre.put('*', 2);
-        pre.put('+', 2);
+    // The index after the digits from the index on, of any script
+    private static int digitsEnd(String regEx, int from) {
+        int i = from;
+        while (i < regEx.length() && Character.isDigit(regEx.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
 
-        String output = new String();
+    // The lower and the upper bound between the braces
+    private static int[] parseRepeat(String regEx, int open, int close) throws RegexSyntaxException {
+        final String bounds = regEx.substring(open + 1, close);
+        final int comma = bounds.indexOf(',');
+        final int min = parseBound(regEx, open + 1, comma == -1 ? bounds : bounds.substring(0, comma));
+        int max = min;
+        if (comma != -1) {
+            max = comma == bounds.length() - 1 ? UNBOUNDED
+                    : parseBound(regEx, open + comma + 2, bounds.substring(comma + 1));
+        }
 
-        // stack that contains operators
-        Stack<Character> oper = new Stack<>();
+        if (max < min) {
+            throw new RegexSyntaxException("Invalid repetition {" + bounds + "}", regEx, open);
+        }
+        return new int[] { min, max };
+    }
 
-        for (char curr : exp.toCharArray()) {
-            if (curr == '.' || curr == '|' || curr == '*' || curr == '+') {
-                // Current character is an operator
+    // The value of ASCII digits, which may have leading zeros
+    private static int parseBound(String regEx, int index, String digits) throws RegexSyntaxException {
+        int value = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            // Stops growing above the limit, so that long numbers cannot overflow
+            value = Math.min(10 * value + digits.charAt(i) - '0', MAX_REPEAT + 1);
+        }
+        if (value > MAX_REPEAT) {
+            throw new RegexSyntaxException("Repetition bound " + digits + " exceeds " + MAX_REPEAT, regEx, index);
+        }
+        return value;
+    }
 
-                while (!oper.isEmpty() && oper.peek() != '('
-                        && pre.get(oper.peek()) >= pre.get(curr)) {
-                    output += oper.pop();
-                }
+    // The chars of an escape sequence
+    private static char[] escapeOf(char c) {
+        switch (c) {
+        case 'd':
+            return CharClass.DIGIT;
+        case 'D':
+            return CharClass.complement(CharClass.DIGIT);
+        case 'w':
+            return CharClass.WORD;
+        case 'W':
+            return CharClass.complement(CharClass.WORD);
+        case 's':
+            return CharClass.SPACE;
+        case 'S':
+            return CharClass.complement(CharClass.SPACE);
+        case 'n':
+            return CharClass.of('\n');
+        case 't':
+            return CharClass.of('\t');
+        case 'r':
+            return CharClass.of('\r');
+        default:
+            return CharClass.of(c);
+        }
+    }
 
-                oper.push(curr);
-            } else if (curr == '(' || curr == ')') {
-                // Current character is a bracket
+    // The index of the ']' that closes the class opened at the index, -1 if there is none
+    private static int classEnd(String regEx, int open) {
+        int i = open + 1;
+        if (i < regEx.length() && regEx.charAt(i) == '^') {
+            i++;
+        }
+        final int first = i;
+        while (i < regEx.length()) {
+            final char curr = regEx.charAt(i);
+            if (curr == ']') {
+                return i > first ? i : -1; // An empty class is not a class
+            }
+            i += curr == '\\' && i + 1 < regEx.length() ? 2 : 1;
+        }
+        return -1;
+    }
 
-                if (curr == '(') {
-                    oper.push(curr);
-                } else {
-                    while (oper.peek() != '(') {
-                        output += oper.pop();
+    // The chars of the class between the brackets
+    private static char[] parseClass(String regEx, int from, int to) throws RegexSyntaxException {
+        final boolean negated = regEx.charAt(from) == '^';
+        List<char[]> intervals = new ArrayList<>();
+        int i = negated ? from + 1 : from;
+        while (i < to) {
+            final int itemStart = i;
+            char[] item = classItem(regEx, i);
+            i += regEx.charAt(i) == '\\' ? 2 : 1;
+
+            // A range needs a single char on both sides of '-', otherwise '-' is the char itself
+            if (isSingle(item) && i + 1 < to && regEx.charAt(i) == '-') {
+                final char[] hi = classItem(regEx, i + 1);
+                if (isSingle(hi)) {
+                    if (hi[0] < item[0]) {
+                        throw new RegexSyntaxException(
+                                "Invalid range " + item[0] + "-" + hi[0] + " in character class", regEx, itemStart);
                     }
-                    oper.pop();
+                    item = new char[] { item[0], hi[0] };
+                    i += regEx.charAt(i + 1) == '\\' ? 3 : 2;
                 }
-            } else {
-                output += curr;
             }
-        }
 
-        while (oper.size() > 0) {
-            output += oper.pop();
+            for (int j = 0; j < item.length; j += 2) {
+                intervals.add(new char[] { item[j], item[j + 1] });
+            }
         }
 
-        return output;
+        final char[] ranges = CharClass.normalize(intervals);
+        return negated ? CharClass.complement(ranges) : ranges;
+    }
+
+    // The chars of the char or escape sequence at the index of a class
+    private static char[] classItem(String regEx, int i) {
+        return regEx.charAt(i) == '\\' ? escapeOf(regEx.charAt(i + 1)) : CharClass.of(regEx.charAt(i));
+    }
+
+    private static boolean isSingle(char[] ranges) {
+        return ranges.length == 2 && ranges[0] == ranges[1];
     }
 
     private static boolean isVerboseMode(String[] args) {
         return args.length > 0 && args[0].equals("-v");
     }
 
-    public static void main(String[] args) {
+    // The file to scan in file mode, null otherwise
+    private static String getScanFile(String[] args) {
+        return args.length > 1 && args[0].equals("-f") ? args[1] : null;
+    }
+
+    // Print the byte offset of every matching line of the file, then the count
+    private static void scanFile(String regEx, String file) throws IOException {
+        FileScanner scanner = new FileScanner(Pattern.compile(regEx));
+        long[] offsets = scanner.matchingLines(Paths.get(file));
+        for (long offset : offsets) {
+            System.out.println(offset);
+        }
+        System.out.println(offsets.length + " matching lines");
+    }
+
+    public static void main(String[] args) throws IOException {
+        // File mode: match every line of the file in parallel
+        final String file = getScanFile(args);
+        if (file != null) {
+            scanFile(new Scanner(System.in).nextLine(), file);
+            return;
+        }
+
         RegexParser parser = new RegexParser();
         parser.readRegEx(); // Read in an regular expression
         parser.buildNFA();
@@ -203,6 +365,7 @@ public class RegexParser {
         // Print transition table
         if (verbose) {
             parser.nfa.printTable();
+            System.out.println(stateReport(parser.input));
         }
 
         System.out.println("Ready");
@@ -1,4 +1,5 @@
 import java.io.ByteArrayInputStream;
+import java.util.Random;
 import org.junit.*;
 
 public class RegexParser_Test {
@@ -522,6 +523,219 @@ public class RegexParser_Test {
         Assert.assertEquals(output, true);
     }
 
+    // Build the NFA of the regular expression and match every input on its own
+    private static void assertMatches(String regEx, String[] inputs, boolean[] expected) {
+        setUserInput(regEx);
+        RegexParser parser = new RegexParser();
+        parser.readRegEx();
+        parser.buildNFA();
+
+        for (int i = 0; i < inputs.length; i++) {
+            parser.getNFA().initialize();
+            Assert.assertEquals(regEx + " on " + inputs[i], expected[i], parser.getNFA().match(inputs[i]));
+        }
+    }
+
+    @Test
+    public void characterClass() {
+        assertMatches("[a-c0-9_]+x", new String[] { "a0_x", "cccx", "x", "dx", "-x", "[x" },
+                new boolean[] { true, true, false, false, false, false });
+        // '-' at either end and an escaped ']' are chars of the class
+        assertMatches("[-a\\]]*", new String[] { "-a]", "", "b", "\\" },
+                new boolean[] { true, true, false, false });
+    }
+
+    @Test
+    public void negatedClass() {
+        assertMatches("a[^bc]d", new String[] { "aad", "a d", "abd", "acd", "ad" },
+                new boolean[] { true, true, false, false, false });
+    }
+
+    @Test
+    public void wildcard() {
+        assertMatches("a.c", new String[] { "abc", "a.c", "a€c", "ac", "a\nc" },
+                new boolean[] { true, true, true, false, false });
+    }
+
+    @Test
+    public void escapedChars() {
+        assertMatches("\\.\\*\\(\\[\\\\", new String[] { ".*([\\", "a*([\\" }, new boolean[] { true, false });
+        assertMatches("\\d+\\s\\w", new String[] { "42 x", "4\t_", "x x", "42  x" },
+                new boolean[] { true, true, false, false });
+    }
+
+    @Test
+    public void bracketsWithoutClass() {
+        // An empty or unclosed '[' is the char itself
+        assertMatches("a[]", new String[] { "a[]", "a" }, new boolean[] { true, false });
+        assertMatches("a[b", new String[] { "a[b", "ab" }, new boolean[] { true, false });
+    }
+
+    @Test
+    public void countedRepetition() {
+        assertMatches("a{3}", new String[] { "aaa", "aa", "aaaa" }, new boolean[] { true, false, false });
+        assertMatches("(ab){2,}c", new String[] { "ababc", "abababababc", "abc" },
+                new boolean[] { true, true, false });
+        assertMatches("x(a|bc){1,3}", new String[] { "xa", "xbca", "xabcbc", "x", "xaaaa" },
+                new boolean[] { true, true, true, false, false });
+        assertMatches("[0-9]{0,2}", new String[] { "", "7", "42", "123" }, new boolean[] { true, true, true, false });
+        assertMatches("ab{0}c", new String[] { "ac", "abc" }, new boolean[] { true, false });
+        assertMatches("a{002,0003}", new String[] { "a", "aa", "aaa", "aaaa" }, new boolean[] { false, true, true, false });
+    }
+
+    @Test
+    public void countersMatchLikeCopies() {
+        String[] patterns = { "a{3}", "a{2,4}", "[ab]{2,}", "(a{2,3})*", "(a{2,3}b)+", "a{0,3}b{2}",
+                "(a{1,2}|b{3})*c*", "((a|b){2}a{2,}){1,2}", "(ab{2,3}){2}", };
+        Random random = new Random(42);
+        for (String regEx : patterns) {
+            CompiledNFA program = NFA.buildAutomaton(RegexParser.parse(regEx)).getProgram();
+            Assert.assertTrue(regEx, program.hasCounters());
+            Matcher counted = new Matcher(program);
+            Matcher unrolled = new Matcher(program.withoutCounters());
+            for (int i = 0; i < 500; i++) {
+                StringBuilder input = new StringBuilder();
+                for (int length = random.nextInt(13); length > 0; length--) {
+                    input.append("aabc".charAt(random.nextInt(4)));
+                }
+                final boolean expected = java.util.regex.Pattern.matches(regEx, input);
+                Assert.assertEquals(regEx + " on " + input, expected, counted.matches(input));
+                Assert.assertEquals(regEx + " unrolled on " + input, expected, unrolled.matches(input));
+            }
+        }
+    }
+
+    @Test
+    public void largeBoundsAreCounted() {
+        // The count sets take several words
+        for (String regEx : new String[] { "a{60,70}", "x[ab]{100,}y", "(a{130}|b)*" }) {
+            CompiledNFA program = NFA.buildAutomaton(RegexParser.parse(regEx)).getProgram();
+            Assert.assertTrue(regEx, program.stateCount() < 10);
+            Matcher matcher = new Matcher(program);
+            for (int n = 0; n < 300; n++) {
+                for (String input : new String[] { "a".repeat(n), "x" + "ab".repeat(n / 2) + "y", "b" + "a".repeat(n) }) {
+                    Assert.assertEquals(regEx + " on " + n, java.util.regex.Pattern.matches(regEx, input),
+                            matcher.matches(input));
+                }
+            }
+        }
+
+        CompiledNFA program = NFA.buildAutomaton(RegexParser.parse("[0-9]{1,65534}")).getProgram();
+        Assert.assertEquals(3, program.stateCount());
+        Assert.assertEquals(true, new Matcher(program).matches("7".repeat(65534)));
+        Assert.assertEquals(false, new Matcher(program).matches("7".repeat(65535)));
+    }
+
+    @Test
+    public void bracesWithoutRepetition() {
+        // A '{' that starts no counted repetition is the char itself
+        assertMatches("a{b}", new String[] { "a{b}", "ab" }, new boolean[] { true, false });
+        assertMatches("a{1,", new String[] { "a{1,", "a" }, new boolean[] { true, false });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRepetitionBounds() {
+        setUserInput("a{3,2}");
+        RegexParser parser = new RegexParser();
+        parser.readRegEx();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void repetitionAboveLimit() {
+        setUserInput("a{65535}");
+        RegexParser parser = new RegexParser();
+        parser.readRegEx();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void repetitionOfRepetition() {
+        setUserInput("a*{2}");
+        RegexParser parser = new RegexParser();
+        parser.readRegEx();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nestedRepetitionTooLarge() {
+        setUserInput("(a{1000}){1000}");
+        RegexParser parser = new RegexParser();
+        parser.readRegEx();
+        parser.buildNFA();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRange() {
+        setUserInput("[z-a]");
+        RegexParser parser = new RegexParser();
+        parser.readRegEx();
+    }
+
+    @Test
+    public void repetitionBoundMessages() {
+        try {
+            RegexParser.parse("a{1,00070000}");
+            Assert.fail();
+        } catch (RegexSyntaxException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Repetition bound 00070000 exceeds 65534"));
+        }
+        try {
+            RegexParser.parse("a{\u0663}");
+            Assert.fail();
+        } catch (RegexSyntaxException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Repetition bound with the non-ASCII digit"));
+        }
+    }
+
+    // The index of the offending char of an invalid regular expression
+    private static int errorIndex(String regEx) {
+        try {
+            RegexParser.parse(regEx);
+        } catch (RegexSyntaxException e) {
+            Assert.assertEquals(regEx, e.getPattern());
+            return e.getIndex();
+        }
+        Assert.fail(regEx + " is valid");
+        return -1;
+    }
+
+    @Test
+    public void errorPosition() {
+        Assert.assertEquals(3, errorIndex("ab(*c)"));
+        Assert.assertEquals(4, errorIndex("a|b||c"));
+        Assert.assertEquals(3, errorIndex("ab|"));
+        Assert.assertEquals(2, errorIndex("ab)c"));
+        Assert.assertEquals(1, errorIndex("a((b)"));
+        Assert.assertEquals(2, errorIndex("a+{2}"));
+        Assert.assertEquals(3, errorIndex("xy[z-a]"));
+        Assert.assertEquals(3, errorIndex("ab{65535}"));
+        Assert.assertEquals(3, errorIndex("ab{99999999999}"));
+        Assert.assertEquals(4, errorIndex("ab{1\u0661}"));
+    }
+
+    @Test
+    public void emptyGroup() {
+        assertMatches("a()b", new String[] { "ab", "a" }, new boolean[] { true, false });
+        assertMatches("()|a", new String[] { "", "a", "aa" }, new boolean[] { true, true, false });
+    }
+
+    @Test
+    public void deepNesting() {
+        final int depth = 100000;
+        String regEx = "(".repeat(depth) + "a|b" + ")".repeat(depth) + "*";
+        assertMatches(regEx, new String[] { "", "abba", "c" }, new boolean[] { true, true, false });
+        Assert.assertEquals(regEx.length(), errorIndex(regEx + ")"));
+    }
+
+    @Test
+    public void longPattern() {
+        // An allow-list of 20000 words, as generated patterns often are
+        StringBuilder regEx = new StringBuilder("w0");
+        for (int i = 1; i < 20000; i++) {
+            regEx.append("|w").append(i);
+        }
+        Assert.assertTrue(regEx.length() > 100000);
+        assertMatches(regEx.toString(), new String[] { "w0", "w12345", "w19999", "w20000", "w" },
+                new boolean[] { true, true, true, false, false });
+    }
     @Test(expected = IllegalArgumentException.class)
     public void startWithKleenePlus() {
         setUserInput("+a");
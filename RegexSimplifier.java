@@ -0,0 +1,297 @@
+import java.util.*;
+
+public final class RegexSimplifier {
+    /*
+     * Rewrite the syntax tree into a smaller tree that matches the same strings
+     * Every state that NFA.buildAutomaton() does not build is closure work
+     * that no matching step has to do.
+     *
+     * Quantifiers of quantifiers collapse, like (a*)* or (a+)? into a*,
+     * and "{1}" disappears. The alternatives of a union are stored in a trie,
+     * which drops duplicates and factors out common prefixes, so an
+     * allow-list like "w0|w1|...|w19999" shares its first chars.
+     * Then the alternatives at every branch of the trie that end alike
+     * share their common suffix, and single chars merge into one class,
+     * so "ab|cb" becomes "[ac]b".
+     *
+     * The tree is rewritten bottom up with an explicit stack, so deep trees
+     * cannot overflow the call stack.
+     */
+    private RegexSimplifier() {
+    }
+
+    public static RegexNode simplify(RegexNode root) {
+        // Every frame is a node and its children that are simplified already
+        Deque<RegexNode> nodes = new ArrayDeque<>();
+        Deque<List<RegexNode>> done = new ArrayDeque<>();
+        nodes.push(root);
+        done.push(new ArrayList<>());
+
+        RegexNode result = null;
+        while (!nodes.isEmpty()) {
+            RegexNode node = nodes.peek();
+            List<RegexNode> children = done.peek();
+            if (children.size() < node.children().size()) {
+                nodes.push(node.children().get(children.size()));
+                done.push(new ArrayList<>());
+                continue;
+            }
+
+            nodes.pop();
+            done.pop();
+            result = rewrite(node, children);
+            if (!done.isEmpty()) {
+                done.peek().add(result);
+            }
+        }
+
+        return result;
+    }
+
+    // The node with its simplified children
+    private static RegexNode rewrite(RegexNode node, List<RegexNode> children) {
+        switch (node.kind()) {
+        case CONCAT:
+            return RegexNode.concat(children, node.position());
+        case UNION:
+            return union(children, node.position());
+        case STAR:
+            return star(children.get(0));
+        case PLUS:
+            return plus(children.get(0));
+        case REPEAT:
+            return repeat(children.get(0), node.min(), node.max());
+        default:
+            return node;
+        }
+    }
+
+    // (x*)*, (x+)* and (x?)* are x*, and so is (x{m,n})* for m up to 1
+    private static RegexNode star(RegexNode child) {
+        switch (child.kind()) {
+        case STAR:
+            return child;
+        case PLUS:
+            return RegexNode.star(child.children().get(0));
+        case REPEAT:
+            return child.min() <= 1 ? RegexNode.star(child.children().get(0)) : RegexNode.star(child);
+        default:
+            return RegexNode.star(child);
+        }
+    }
+
+    // (x*)+ is x*, (x+)+ is x+, and (x{m,n})+ is x* for m = 0 or x+ for m = 1
+    private static RegexNode plus(RegexNode child) {
+        switch (child.kind()) {
+        case STAR:
+        case PLUS:
+            return child;
+        case REPEAT:
+            if (child.min() == 0) {
+                return RegexNode.star(child.children().get(0));
+            }
+            return child.min() == 1 ? RegexNode.plus(child.children().get(0)) : RegexNode.plus(child);
+        default:
+            return RegexNode.plus(child);
+        }
+    }
+
+    private static RegexNode repeat(RegexNode child, int min, int max) {
+        if (max == 0) {
+            return RegexNode.empty(child.position());
+        }
+        if (min == 1 && max == 1) {
+            return child;
+        }
+        if (max == RegexParser.UNBOUNDED && min <= 1) {
+            return min == 0 ? star(child) : plus(child);
+        }
+
+        // Any number of x* is x*, and at most max of x? is x{0,max}
+        if (child.kind() == RegexNode.Kind.STAR) {
+            return child;
+        }
+        if (child.kind() == RegexNode.Kind.REPEAT && child.min() == 0 && child.max() == 1 && min == 0) {
+            return RegexNode.repeat(child.children().get(0), 0, max);
+        }
+        return RegexNode.repeat(child, min, max);
+    }
+
+    /*
+     * A union through a trie of its alternatives
+     * Each alternative is a sequence of parts, and the parts are compared
+     * by their postfix form. A branch of the trie is a node where
+     * an alternative ends or the alternatives go different ways,
+     * and the chains of parts between branches stay concatenations.
+     */
+    private static RegexNode union(List<RegexNode> alternatives, int position) {
+        Map<RegexNode, String> keys = new IdentityHashMap<>();
+        Trie root = new Trie(null);
+        for (RegexNode alternative : alternatives) {
+            Trie curr = root;
+            for (RegexNode part : partsOf(alternative)) {
+                curr = curr.child(part, keyOf(part, keys));
+            }
+            curr.end = true;
+        }
+
+        // Only the root and the branches are turned into nodes, children first
+        Deque<Trie> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Trie curr = stack.peek();
+            if (!curr.expanded) {
+                curr.expanded = true;
+                for (Trie child : curr.children.values()) {
+                    stack.push(branchOf(child));
+                }
+                continue;
+            }
+
+            stack.pop();
+            List<List<RegexNode>> rests = new ArrayList<>();
+            for (Trie child : curr.children.values()) {
+                List<RegexNode> rest = new ArrayList<>();
+                Trie branch = child;
+                rest.add(branch.part);
+                while (!branch.isBranch()) {
+                    branch = branch.children.values().iterator().next();
+                    rest.add(branch.part);
+                }
+                rest.addAll(partsOf(branch.node));
+                rests.add(rest);
+            }
+            if (curr.end) {
+                rests.add(new ArrayList<>());
+            }
+            curr.node = factorSuffixes(rests, position, keys);
+        }
+
+        return root.node;
+    }
+
+    // The first branch at or after the trie node
+    private static Trie branchOf(Trie trie) {
+        while (!trie.isBranch()) {
+            trie = trie.children.values().iterator().next();
+        }
+        return trie;
+    }
+
+    /*
+     * Join the alternatives at a branch of the trie
+     * Alternatives with the same last part share their longest common suffix.
+     * This happens once per branch, the unions in front of the suffixes only
+     * merge their single chars, so the rewrite stays linear.
+     */
+    private static RegexNode factorSuffixes(List<List<RegexNode>> rests, int position, Map<RegexNode, String> keys) {
+        Map<String, List<List<RegexNode>>> groups = new LinkedHashMap<>();
+        List<RegexNode> alternatives = new ArrayList<>();
+        for (List<RegexNode> rest : rests) {
+            if (rest.isEmpty()) {
+                alternatives.add(RegexNode.empty(position));
+            } else {
+                groups.computeIfAbsent(keyOf(rest.get(rest.size() - 1), keys), k -> new ArrayList<>()).add(rest);
+            }
+        }
+
+        for (List<List<RegexNode>> group : groups.values()) {
+            if (group.size() == 1) {
+                alternatives.add(RegexNode.concat(group.get(0), position));
+                continue;
+            }
+
+            // The number of parts at the end that every alternative of the group shares
+            final List<RegexNode> first = group.get(0);
+            int shared = 1;
+            boolean same = true;
+            while (same && shared < first.size()) {
+                final String key = keyOf(first.get(first.size() - 1 - shared), keys);
+                for (List<RegexNode> rest : group) {
+                    if (shared >= rest.size() || !keyOf(rest.get(rest.size() - 1 - shared), keys).equals(key)) {
+                        same = false;
+                        break;
+                    }
+                }
+                if (same) {
+                    shared++;
+                }
+            }
+
+            List<RegexNode> fronts = new ArrayList<>();
+            for (List<RegexNode> rest : group) {
+                fronts.add(RegexNode.concat(rest.subList(0, rest.size() - shared), position));
+            }
+            List<RegexNode> parts = new ArrayList<>();
+            parts.add(mergeChars(fronts, position));
+            parts.addAll(first.subList(first.size() - shared, first.size()));
+            alternatives.add(RegexNode.concat(parts, position));
+        }
+
+        return mergeChars(alternatives, position);
+    }
+
+    // A union where the alternatives that are plain chars or classes become one class
+    private static RegexNode mergeChars(List<RegexNode> alternatives, int position) {
+        List<RegexNode> others = new ArrayList<>();
+        List<char[]> intervals = new ArrayList<>();
+        int charsAt = -1; // Where the merged class goes, among the other alternatives
+        for (RegexNode alternative : alternatives) {
+            if (alternative.kind() != RegexNode.Kind.CHARS) {
+                others.add(alternative);
+                continue;
+            }
+
+            if (charsAt == -1) {
+                charsAt = others.size();
+                others.add(null);
+            }
+            final char[] ranges = alternative.ranges();
+            for (int i = 0; i < ranges.length; i += 2) {
+                intervals.add(new char[] { ranges[i], ranges[i + 1] });
+            }
+        }
+
+        if (charsAt != -1) {
+            others.set(charsAt, RegexNode.chars(CharClass.normalize(intervals), position));
+        }
+        return RegexNode.union(others, position);
+    }
+
+    // The sequence of parts of an alternative
+    private static List<RegexNode> partsOf(RegexNode node) {
+        switch (node.kind()) {
+        case EMPTY:
+            return Collections.emptyList();
+        case CONCAT:
+            return node.children();
+        default:
+            return Collections.singletonList(node);
+        }
+    }
+
+    private static String keyOf(RegexNode part, Map<RegexNode, String> keys) {
+        return keys.computeIfAbsent(part, RegexNode::toPostfix);
+    }
+
+    // A node of the trie of alternatives, reached through its part
+    private static final class Trie {
+        final RegexNode part;
+        final Map<String, Trie> children = new LinkedHashMap<>();
+        boolean end; // An alternative ends here
+        boolean expanded;
+        RegexNode node; // The union of the rests of the alternatives from here
+
+        Trie(RegexNode part) {
+            this.part = part;
+        }
+
+        Trie child(RegexNode part, String key) {
+            return children.computeIfAbsent(key, k -> new Trie(part));
+        }
+
+        boolean isBranch() {
+            return end || children.size() != 1;
+        }
+    }
+}
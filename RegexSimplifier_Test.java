@@ -0,0 +1,79 @@
+import java.util.*;
+import org.junit.*;
+
+public class RegexSimplifier_Test {
+    private static String simplified(String regEx) {
+        return RegexSimplifier.simplify(RegexParser.parseTree(regEx)).toPostfix();
+    }
+
+    private static int states(String postfix) {
+        return NFA.buildAutomaton(postfix).stateCount();
+    }
+
+    @Test
+    public void algebraicRewrites() {
+        Assert.assertEquals(simplified("a*"), simplified("(a*)*"));
+        Assert.assertEquals(simplified("a*"), simplified("(a+)*"));
+        Assert.assertEquals(simplified("a*"), simplified("(a*)+"));
+        Assert.assertEquals(simplified("a*"), simplified("((a))*"));
+        Assert.assertEquals(simplified("a*"), simplified("(a{0,1})+"));
+        Assert.assertEquals(simplified("a*"), simplified("(a{0,3})*"));
+        Assert.assertEquals(simplified("a+"), simplified("(a+)+"));
+        Assert.assertEquals(simplified("a"), simplified("a{1}"));
+        Assert.assertEquals(simplified("x"), simplified("x|x"));
+        Assert.assertEquals(simplified("bc"), simplified("ba{0}c"));
+    }
+
+    @Test
+    public void factorAlternatives() {
+        Assert.assertEquals(simplified("ab(c|d)"), simplified("abc|abd"));
+        Assert.assertEquals(simplified("[ac]b"), simplified("ab|cb"));
+        Assert.assertEquals(simplified("[a-c]"), simplified("a|b|c"));
+        Assert.assertEquals(simplified("ab{0,1}"), simplified("a|ab"));
+        Assert.assertEquals(simplified("b{0,1}c"), simplified("bc|c"));
+    }
+
+    @Test
+    public void fewerStates() {
+        StringBuilder regEx = new StringBuilder("user0");
+        for (int i = 1; i < 1000; i++) {
+            regEx.append("|user").append(i);
+        }
+
+        final int parsed = states(RegexParser.parseTree(regEx.toString()).toPostfix());
+        final int simplified = states(RegexParser.parse(regEx.toString()));
+        Assert.assertTrue(parsed + " -> " + simplified, 3 * simplified < parsed);
+
+        // The flat form leaves out the states that only pass on a single epsilon transition
+        NFA nfa = NFA.buildAutomaton(RegexParser.parse("abc(d|e)*"));
+        Assert.assertTrue(nfa.getProgram().stateCount() < nfa.stateCount());
+    }
+
+    @Test
+    public void sameResultsAsParsed() {
+        String[] patterns = { "(a*)*b", "(ab|a)(bc|c)*", "abc|abd|ab", "xa|ya|za|a", "(a|b|ab)+",
+                "((a|b){0,1}){2,3}c", "(a+|b)(a*|c)", "(ab)+|(ab)*", "a{2}|a{3}|a{2}b", };
+        Random random = new Random(42);
+        for (String regEx : patterns) {
+            NFA parsed = NFA.buildAutomaton(RegexParser.parseTree(regEx).toPostfix());
+            NFA simplified = NFA.buildAutomaton(RegexParser.parse(regEx));
+            for (int i = 0; i < 500; i++) {
+                StringBuilder input = new StringBuilder();
+                final int length = random.nextInt(7);
+                for (int j = 0; j < length; j++) {
+                    input.append("abcdxyz".charAt(random.nextInt(4 + (j % 2) * 3)));
+                }
+
+                parsed.initialize();
+                simplified.initialize();
+                Assert.assertEquals(regEx + " on " + input, parsed.match(input.toString()),
+                        simplified.match(input.toString()));
+            }
+        }
+    }
+
+    @Test
+    public void stateReport() {
+        Assert.assertTrue(RegexParser.stateReport("(a*)*|(a*)*").startsWith("States: "));
+    }
+}
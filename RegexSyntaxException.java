@@ -0,0 +1,31 @@
+public class RegexSyntaxException extends IllegalArgumentException {
+    /*
+     * An invalid regular expression, with the index of the offending char
+     * The message shows the regular expression with a marker under the index.
+     */
+    private static final long serialVersionUID = 1L;
+
+    private final String description;
+    private final String pattern;
+    private final int index;
+
+    public RegexSyntaxException(String description, String pattern, int index) {
+        super(description + " near index " + index + "\n" + pattern + "\n" + " ".repeat(index) + "^");
+        this.description = description;
+        this.pattern = pattern;
+        this.index = index;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    // The index of the offending char, the length of the pattern if it ends too early
+    public int getIndex() {
+        return index;
+    }
+}
@@ -0,0 +1,287 @@
+import java.util.*;
+
+public class Searcher {
+    /*
+     * Unanchored search for the leftmost longest match
+     * The compiled NFA is simulated like in Matcher, but a new thread is
+     * started at every input position, and every state remembers the
+     * position where its thread started. When two threads reach the same
+     * state, the one that started first wins. So a single pass over the
+     * input finds the leftmost match, in time linear in the scanned text.
+     *
+     * With a prefilter, the search gives up if the input lacks a required
+     * literal, and while no thread is alive it jumps straight to the next
+     * occurrence of the prefix, since every match starts with it.
+     * Without a prefix it still skips the chars that no match starts with,
+     * unless the pattern matches the empty string. A single start char
+     * in a String is found with the intrinsic of String.indexOf().
+     *
+     * findAll() starts a new search at the end of every match, and the
+     * search for the longest match may have stepped far beyond that end,
+     * like a|a*b does on a long run of a. Every thread that the search had
+     * after the end of its match started no later than the match,
+     * so it can never reach the accept state. The next search steps these
+     * dead states along and drops its own threads when they reach one.
+     * So every state at every position is stepped at most once after the
+     * end of a match, and findAll() stays linear in the input.
+     *
+     * Like a Matcher, a searcher must not be used by two threads at once.
+     */
+    private final CompiledNFA program;
+    private final Prefilter prefilter;
+    private SparseSet current;
+    private SparseSet next;
+    private int[] currentStart; // The start position of the thread in each current state
+    private int[] nextStart;
+    private final boolean[] startClasses; // The classes of the alphabet that a match starts with, null if any position can start one
+    private final int startChar; // The only char that a match starts with, -1 if there are more
+
+    // States that cannot reach the accept state any more, see findAll()
+    private SparseSet dead; // At the current position of the search
+    private SparseSet deadNext;
+    private SparseSet learned; // From the previous search, at learnedAt
+    private int learnedAt;
+    private SparseSet snapshot; // The threads and the dead states one position after the end of the match
+
+    public Searcher(CompiledNFA program) {
+        this(program, Prefilter.NONE);
+    }
+
+    public Searcher(CompiledNFA program, Prefilter prefilter) {
+        this.program = program.withoutCounters();
+        this.prefilter = prefilter;
+        current = new SparseSet(this.program.stateCount());
+        next = new SparseSet(this.program.stateCount());
+        currentStart = new int[this.program.stateCount()];
+        nextStart = new int[this.program.stateCount()];
+        dead = new SparseSet(this.program.stateCount());
+        deadNext = new SparseSet(this.program.stateCount());
+        learned = new SparseSet(this.program.stateCount());
+        learnedAt = -1;
+        snapshot = new SparseSet(this.program.stateCount());
+
+        startClasses = startClassesOf(this.program);
+        startChar = startClasses == null ? -1 : singleChar(this.program.alphabet, startClasses);
+    }
+
+    // The classes that a symbol transition from the start closure accepts
+    // If the start closure accepts, an empty match can start anywhere
+    private static boolean[] startClassesOf(CompiledNFA program) {
+        final Alphabet alphabet = program.alphabet;
+        boolean[] classes = new boolean[alphabet.classCount()];
+        for (int i = program.closureStart[program.start]; i < program.closureStart[program.start + 1]; i++) {
+            final int state = program.closureStates[i];
+            if (program.acceptId[state] != CompiledNFA.NONE) {
+                return null;
+            }
+            for (int id = 1; id < classes.length; id++) {
+                classes[id] |= program.hasTransition(state, alphabet.representative(id));
+            }
+        }
+        return classes;
+    }
+
+    private static int singleChar(Alphabet alphabet, boolean[] classes) {
+        int single = -1;
+        for (int id = 1; id < classes.length; id++) {
+            if (classes[id]) {
+                final char[] intervals = alphabet.intervals(id);
+                if (single != -1 || intervals.length != 2 || intervals[0] != intervals[1]) {
+                    return -1;
+                }
+                single = intervals[0];
+            }
+        }
+        return single;
+    }
+
+    // The first position at or after from whose char a match can start with, input.length() if there is none
+    private int nextStart(CharSequence input, int from) {
+        if (startClasses == null) {
+            return from;
+        }
+        if (startChar != -1 && input instanceof String) {
+            final int index = ((String) input).indexOf(startChar, from);
+            return index == -1 ? input.length() : index;
+        }
+
+        int pos = from;
+        while (pos < input.length() && !startClasses[program.alphabet.classOf(input.charAt(pos))]) {
+            pos++;
+        }
+        return pos;
+    }
+
+    // Find the leftmost longest match that starts at or after from
+    // Returns null if there is none
+    public Match find(CharSequence input, int from) {
+        learnedAt = -1;
+        return search(input, from);
+    }
+
+    // Find the next match, using the dead states that the previous search learned
+    private Match search(CharSequence input, int from) {
+        final int accept = program.accept;
+        int matchStart = -1;
+        int matchEnd = -1;
+        if (prefilter.rejectsFrom(input, from)) {
+            return null;
+        }
+
+        // The dead states after an empty match are one position behind
+        for (; learnedAt != -1 && learnedAt < from && !learned.isEmpty(); learnedAt++) {
+            program.step(learned, input.charAt(learnedAt), deadNext);
+            SparseSet temp = learned;
+            learned = deadNext;
+            deadNext = temp;
+        }
+
+        current.clear();
+        dead.clear();
+        int snapshotAt = -1;
+        int pos = from;
+        for (; ; pos++) {
+            // Skip to the next candidate while there are no threads
+            if (current.isEmpty() && matchStart == -1) {
+                final int skipped = pos;
+                pos = prefilter.nextCandidate(input, pos);
+                if (pos == -1) {
+                    break;
+                }
+                pos = nextStart(input, pos);
+                if (pos != skipped) {
+                    dead.clear();
+                }
+            }
+
+            if (learnedAt != -1 && pos >= learnedAt) {
+                if (pos == learnedAt) {
+                    addAll(dead, learned);
+                }
+                learnedAt = -1;
+            }
+
+            // Start a new thread here, unless a match that starts earlier is known
+            // The new thread comes last, so current stays ordered by start position
+            if (matchStart == -1) {
+                for (int i = program.closureStart[program.start]; i < program.closureStart[program.start + 1]; i++) {
+                    final int state = program.closureStates[i];
+                    if (!dead.contains(state) && current.add(state)) {
+                        currentStart[state] = pos;
+                    }
+                }
+            }
+
+            if (accept != CompiledNFA.NONE && current.contains(accept)) {
+                final int start = currentStart[accept];
+                if (matchStart == -1 || start < matchStart || (start == matchStart && pos > matchEnd)) {
+                    matchStart = start;
+                    matchEnd = pos;
+                }
+            }
+
+            // Past the end of the match every thread is dead, unless the match grows later
+            if (matchStart != -1 && pos == matchEnd + 1) {
+                snapshot.clear();
+                addAll(snapshot, current);
+                addAll(snapshot, dead);
+                snapshotAt = pos;
+            }
+
+            if (pos == input.length() || (current.isEmpty() && matchStart != -1)) {
+                break;
+            }
+
+            step(input.charAt(pos), matchStart);
+        }
+
+        if (matchStart == -1) {
+            return null;
+        }
+
+        // The next search starts at the end of the match, where this one either stopped or took the snapshot
+        SparseSet temp = learned;
+        if (snapshotAt == matchEnd + 1) {
+            learned = snapshot;
+            snapshot = temp;
+            learnedAt = snapshotAt;
+        } else {
+            learned = dead;
+            dead = temp;
+            learnedAt = pos;
+        }
+        return new Match(matchStart, matchEnd);
+    }
+
+    private static void addAll(SparseSet to, SparseSet from) {
+        for (int i = 0; i < from.size(); i++) {
+            to.add(from.get(i));
+        }
+    }
+
+    // Iterate over the non-overlapping leftmost longest matches
+    public Iterator<Match> findAll(final CharSequence input) {
+        return new Iterator<Match>() {
+            private Match next = find(input, 0);
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Match next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+
+                Match match = next;
+                // An empty match is the longest at its position,
+                // so the next match cannot start there as well
+                final int from = match.end() == match.start() ? match.end() + 1 : match.end();
+                next = from <= input.length() ? search(input, from) : null;
+                return match;
+            }
+        };
+    }
+
+    // Advance every thread by the input symbol
+    // Threads that started after a known match are dropped, and so are threads in dead states
+    private void step(char c, int matchStart) {
+        if (!dead.isEmpty()) {
+            program.step(dead, c, deadNext);
+            SparseSet temp = dead;
+            dead = deadNext;
+            deadNext = temp;
+        }
+
+        next.clear();
+        for (int i = 0; i < current.size(); i++) {
+            final int state = current.get(i);
+            final int start = currentStart[state];
+            if (matchStart != -1 && start > matchStart) {
+                continue;
+            }
+
+            if (!program.hasTransition(state, c)) {
+                continue;
+            }
+
+            final int target = program.next[state];
+            for (int j = program.closureStart[target]; j < program.closureStart[target + 1]; j++) {
+                final int reached = program.closureStates[j];
+                if (!dead.contains(reached) && next.add(reached)) {
+                    nextStart[reached] = start;
+                }
+            }
+        }
+
+        SparseSet temp = current;
+        current = next;
+        next = temp;
+
+        int[] tempStart = currentStart;
+        currentStart = nextStart;
+        nextStart = tempStart;
+    }
+}
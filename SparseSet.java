@@ -0,0 +1,66 @@
+public class SparseSet {
+    /*
+     * A set of integers in the range [0, capacity) as described by
+     * Briggs and Torczon: "An efficient representation for sparse sets".
+     * Insertion, membership test and clearing are all constant time,
+     * and the members can be iterated in insertion order through dense.
+     * Neither array needs to be initialized, so a set is never rebuilt
+     * once it has been allocated.
+     */
+    private final int[] dense; // The members in insertion order
+    private final int[] sparse; // The index of each member in dense
+    private int size;
+
+    public SparseSet(int capacity) {
+        dense = new int[capacity];
+        sparse = new int[capacity];
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int capacity() {
+        return dense.length;
+    }
+
+    // The i-th member in insertion order
+    public int get(int i) {
+        return dense[i];
+    }
+
+    public boolean contains(int value) {
+        final int index = sparse[value];
+        return index < size && dense[index] == value;
+    }
+
+    // Add a member, returns false if it was already in the set
+    public boolean add(int value) {
+        if (contains(value)) {
+            return false;
+        }
+
+        dense[size] = value;
+        sparse[value] = size;
+        size++;
+        return true;
+    }
+
+    // Add distinct values that are known not to be in the set yet
+    public void addAll(int[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            dense[size] = values[i];
+            sparse[values[i]] = size;
+            size++;
+        }
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
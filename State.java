@@ -5,17 +5,22 @@ public class State {
      * A state in Thompson's NFA
      * can either have a symbol transition to at most one state
      * or epsilon transitions to up to two states
+     *
+     * A counter gate passes the threads of a counted repetition of a single
+     * char or class, see NFA.repeat()
      */
     public int id;
     public boolean isFinal;
     public Transition to; // symbol transition
     public List<State> epTo; // epsilon transition
+    public int[] bounds; // The min and max count of a counter gate, null for any other state
 
     public State(boolean isFinal) {
         id = -1;
         this.isFinal = isFinal;
         to = null;
         epTo = new ArrayList<>();
+        bounds = null;
     }
 
     // Add an epsilon transition
@@ -28,6 +33,11 @@ public class State {
         from.to = new Transition(symbol, to);
     }
 
+    // Add a symbol transition on any char of a character class
+    public static void addTo(State from, State to, char[] ranges) {
+        from.to = new Transition(ranges, to);
+    }
+
     public String toString() {
         return "q" + id;
     }
@@ -0,0 +1,26 @@
+import java.util.*;
+
+final class StateKey {
+    /*
+     * A sorted set of NFA states as a hash map key
+     * The subset constructions of DFA and LazyDFA look up their DFA states
+     * by these keys, without boxing the states.
+     */
+    private final int[] states;
+    private final int hash;
+
+    StateKey(int[] states) {
+        this.states = states;
+        hash = Arrays.hashCode(states);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof StateKey && Arrays.equals(states, ((StateKey) other).states);
+    }
+}
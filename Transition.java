@@ -1,9 +1,18 @@
 class Transition {
-    public char symbol;
+    public char[] ranges; // The accepted chars as sorted lo, hi pairs
     public State next;
 
     Transition(char symbol, State next) {
-        this.symbol = symbol;
+        this(CharClass.of(symbol), next);
+    }
+
+    Transition(char[] ranges, State next) {
+        this.ranges = ranges;
         this.next = next;
     }
+
+    // The column header of the transition in the transition table
+    public String label() {
+        return CharClass.toString(ranges);
+    }
 }
\ No newline at end of file
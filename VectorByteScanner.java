@@ -0,0 +1,31 @@
+import java.nio.*;
+import jdk.incubator.vector.*;
+
+final class VectorByteScanner implements ByteScanner.Scan {
+    /*
+     * Find a byte in a buffer a vector at a time, with jdk.incubator.vector
+     * One compare tests all the bytes of the preferred species, 16, 32 or 64
+     * on x86 with SSE, AVX2 or AVX-512, and the first set lane of the mask
+     * is the first occurrence. The bytes that do not fill a vector are left
+     * to the word at a time scan of ByteScanner.
+     *
+     * ByteScanner loads this class by name, and only if the module is in
+     * the boot layer, so the class is never loaded without it. The API is
+     * the one of the incubator module in JDK 17.
+     */
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    @Override
+    public int indexOf(ByteBuffer buffer, int from, int to, byte value) {
+        final int length = SPECIES.length();
+        int i = from;
+        for (; i + length <= to; i += length) {
+            final VectorMask<Byte> found = ByteVector.fromByteBuffer(SPECIES, buffer, i, ByteOrder.nativeOrder())
+                    .eq(value);
+            if (found.anyTrue()) {
+                return i + found.firstTrue();
+            }
+        }
+        return ByteScanner.swarIndexOf(buffer, i, to, value);
+    }
+}
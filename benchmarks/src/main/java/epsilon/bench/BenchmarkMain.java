@@ -0,0 +1,36 @@
+package epsilon.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class BenchmarkMain {
+    /*
+     * Run the benchmarks with the GC profiler
+     * Takes the same arguments as the JMH runner, and adds "-prof gc" unless
+     * the GC profiler is already requested, so the allocation rate
+     * is always reported next to the throughput.
+     */
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!profiles(options, "gc")) {
+            options.add("-prof");
+            options.add("gc");
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+
+    // Check if the options request the profiler, as "-prof name" or "-prof name:settings"
+    private static boolean profiles(List<String> options, String profiler) {
+        for (int i = 0; i + 1 < options.size(); i++) {
+            final String value = options.get(i + 1);
+            if (options.get(i).equals("-prof") && (value.equals(profiler) || value.startsWith(profiler + ":"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
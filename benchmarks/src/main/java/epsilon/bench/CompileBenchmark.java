@@ -0,0 +1,58 @@
+package epsilon.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * The cost of turning a regular expression into a program
+ * parse: RegexParser.parse(), checking and converting to postfix
+ * buildAutomaton: NFA.buildAutomaton() from the postfix form
+ * compile: both, and flattening the NFA with getProgram()
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompileBenchmark {
+    // short: a hand written pattern, long: an allow-list of 500 words, nested: 200 nested brackets
+    @Param({ "short", "long", "nested" })
+    public String regex;
+
+    private String regEx;
+    private String postfix;
+
+    @Setup
+    public void setup() {
+        switch (regex) {
+        case "short":
+            regEx = Inputs.SHORT_REGEX;
+            break;
+        case "long":
+            regEx = Inputs.allowList(500);
+            break;
+        case "nested":
+            regEx = Inputs.nested(200);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown regex " + regex);
+        }
+        postfix = Engine.parse(regEx);
+    }
+
+    @Benchmark
+    public String parse() {
+        return Engine.parse(regEx);
+    }
+
+    @Benchmark
+    public Object buildAutomaton() {
+        return Engine.buildAutomaton(postfix);
+    }
+
+    @Benchmark
+    public Object compile() {
+        return Engine.getProgram(Engine.buildAutomaton(Engine.parse(regEx)));
+    }
+}
@@ -0,0 +1,135 @@
+package epsilon.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+final class Engine {
+    /*
+     * The engine lives in the default package, which a named package cannot import,
+     * and JMH refuses benchmarks in the default package.
+     * So the benchmarks call the engine through method handles. The handles are
+     * static final constants, which the JIT inlines like direct calls.
+     * Engine types are passed around as Object.
+     */
+    private static final MethodHandle PARSE;
+    private static final MethodHandle BUILD_AUTOMATON;
+    private static final MethodHandle GET_PROGRAM;
+    private static final MethodHandle INITIALIZE;
+    private static final MethodHandle MATCH;
+    private static final MethodHandle PATTERN_COMPILE;
+    private static final MethodHandle PATTERN_MATCHES;
+
+    // Pattern.EAGER_DFA
+    static final int EAGER_DFA = 1;
+
+    // Pattern.GENERATE_BYTECODE
+    static final int GENERATE_BYTECODE = 4;
+
+    // Pattern.GLUSHKOV
+    static final int GLUSHKOV = 8;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> parser = Class.forName("RegexParser");
+            Class<?> nfa = Class.forName("NFA");
+            Class<?> program = Class.forName("CompiledNFA");
+            Class<?> pattern = Class.forName("Pattern");
+
+            PARSE = lookup.findStatic(parser, "parse", MethodType.methodType(String.class, String.class));
+            BUILD_AUTOMATON = lookup.findStatic(nfa, "buildAutomaton", MethodType.methodType(nfa, String.class))
+                    .asType(MethodType.methodType(Object.class, String.class));
+            GET_PROGRAM = lookup.findVirtual(nfa, "getProgram", MethodType.methodType(program))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            INITIALIZE = lookup.findVirtual(nfa, "initialize", MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(void.class, Object.class));
+            MATCH = lookup.findVirtual(nfa, "match", MethodType.methodType(boolean.class, String.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class, String.class));
+            PATTERN_COMPILE = lookup
+                    .findStatic(pattern, "compile", MethodType.methodType(pattern, String.class, int.class))
+                    .asType(MethodType.methodType(Object.class, String.class, int.class));
+            PATTERN_MATCHES = lookup
+                    .findVirtual(pattern, "matches", MethodType.methodType(boolean.class, CharSequence.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class, CharSequence.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Engine() {
+    }
+
+    // RegexParser.parse(regEx)
+    static String parse(String regEx) {
+        try {
+            return (String) PARSE.invokeExact(regEx);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // NFA.buildAutomaton(postfix)
+    static Object buildAutomaton(String postfix) {
+        try {
+            return (Object) BUILD_AUTOMATON.invokeExact(postfix);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // nfa.getProgram()
+    static Object getProgram(Object nfa) {
+        try {
+            return (Object) GET_PROGRAM.invokeExact(nfa);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // nfa.initialize()
+    static void initialize(Object nfa) {
+        try {
+            INITIALIZE.invokeExact(nfa);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // nfa.match(input)
+    static boolean match(Object nfa, String input) {
+        try {
+            return (boolean) MATCH.invokeExact(nfa, input);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // Pattern.compile(regEx, flags)
+    static Object compilePattern(String regEx, int flags) {
+        try {
+            return (Object) PATTERN_COMPILE.invokeExact(regEx, flags);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // pattern.matches(input)
+    static boolean matches(Object pattern, CharSequence input) {
+        try {
+            return (boolean) PATTERN_MATCHES.invokeExact(pattern, input);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new IllegalStateException(e);
+    }
+}
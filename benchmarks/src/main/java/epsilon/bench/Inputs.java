@@ -0,0 +1,59 @@
+package epsilon.bench;
+
+import java.util.Random;
+
+final class Inputs {
+    /*
+     * The regular expressions and texts of the benchmarks
+     * Every text is generated from a fixed seed, so runs are comparable.
+     */
+    private Inputs() {
+    }
+
+    // A typical hand written regular expression
+    static final String SHORT_REGEX = "(a+|b)(a*|c)";
+
+    // An allow-list of many words, like generated patterns
+    static String allowList(int words) {
+        Random random = new Random(42);
+        StringBuilder regEx = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                regEx.append('|');
+            }
+            regEx.append(randomText(random, 4 + random.nextInt(8), "abcdefghijklmnopqrstuvwxyz"));
+        }
+        return regEx.toString();
+    }
+
+    // Brackets nested to the depth around a single symbol
+    static String nested(int depth) {
+        StringBuilder regEx = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            regEx.append('(');
+        }
+        regEx.append('a');
+        for (int i = 0; i < depth; i++) {
+            regEx.append(')');
+        }
+        return regEx.toString();
+    }
+
+    // Random text over the alphabet
+    static String randomText(Random random, int length, String alphabet) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+
+    // A string of the char repeated
+    static String repeat(char c, int count) {
+        StringBuilder text = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            text.append(c);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,97 @@
+package epsilon.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * The cost of matching an input against a compiled regular expression
+ * initialize: NFA.initialize(), going back to the start states
+ * match: NFA.initialize() and NFA.match() on the whole input
+ * patternMatches: Pattern.matches() with the default engine, bit-parallel for short patterns
+ * dfaMatches: Pattern.matches() with the minimal DFA
+ * bytecodeMatches: Pattern.matches() with the class generated for the minimal DFA
+ * glushkovMatches: Pattern.matches() with the position automaton instead of Thompson's NFA
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MatchBenchmark {
+    /*
+     * short: "(a+|b)(a*|c)" on a few chars
+     * long: "(a|b)*abb" on 100000 random chars
+     * pathological: "(a|aa)*(a|aa)*(a|aa)*b" on 10000 a's without the b,
+     * which keeps many states alive and makes backtracking engines explode
+     */
+    @Param({ "short", "long", "pathological" })
+    public String input;
+
+    private String text;
+    private Object nfa;
+    private Object pattern;
+    private Object dfaPattern;
+    private Object bytecodePattern;
+    private Object glushkovPattern;
+
+    @Setup
+    public void setup() {
+        String regEx;
+        switch (input) {
+        case "short":
+            regEx = Inputs.SHORT_REGEX;
+            text = "aaac";
+            break;
+        case "long":
+            regEx = "(a|b)*abb";
+            text = Inputs.randomText(new Random(42), 100000 - 3, "ab") + "abb";
+            break;
+        case "pathological":
+            regEx = "(a|aa)*(a|aa)*(a|aa)*b";
+            text = Inputs.repeat('a', 10000);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown input " + input);
+        }
+
+        nfa = Engine.buildAutomaton(Engine.parse(regEx));
+        Engine.initialize(nfa);
+        pattern = Engine.compilePattern(regEx, 0);
+        dfaPattern = Engine.compilePattern(regEx, Engine.EAGER_DFA);
+        bytecodePattern = Engine.compilePattern(regEx, Engine.GENERATE_BYTECODE);
+        glushkovPattern = Engine.compilePattern(regEx, Engine.GLUSHKOV);
+    }
+
+    @Benchmark
+    public void initialize() {
+        Engine.initialize(nfa);
+    }
+
+    @Benchmark
+    public boolean match() {
+        Engine.initialize(nfa);
+        return Engine.match(nfa, text);
+    }
+
+    @Benchmark
+    public boolean patternMatches() {
+        return Engine.matches(pattern, text);
+    }
+
+    @Benchmark
+    public boolean dfaMatches() {
+        return Engine.matches(dfaPattern, text);
+    }
+
+    @Benchmark
+    public boolean bytecodeMatches() {
+        return Engine.matches(bytecodePattern, text);
+    }
+
+    @Benchmark
+    public boolean glushkovMatches() {
+        return Engine.matches(glushkovPattern, text);
+    }
+}